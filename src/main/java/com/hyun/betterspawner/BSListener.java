@@ -1,5 +1,7 @@
 package com.hyun.betterspawner;
 
+import com.hyun.betterspawner.storage.SpawnerRecord;
+import com.hyun.betterspawner.storage.SpawnerRegistry;
 import com.hyun.betterspawner.utils.ItemUtil;
 import com.hyun.betterspawner.utils.NBTUtil;
 import com.hyun.betterspawner.utils.nbt.MojangsonParser;
@@ -8,11 +10,7 @@ import org.bukkit.Material;
 import org.bukkit.Sound;
 import org.bukkit.block.Block;
 import org.bukkit.block.CreatureSpawner;
-import org.bukkit.configuration.ConfigurationSection;
-import org.bukkit.configuration.MemoryConfiguration;
 import org.bukkit.enchantments.Enchantment;
-import org.bukkit.entity.ArmorStand;
-import org.bukkit.entity.Entity;
 import org.bukkit.entity.EntityType;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
@@ -27,11 +25,10 @@ import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.BlockStateMeta;
 import org.bukkit.persistence.PersistentDataType;
 
-import javax.annotation.Nullable;
 import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.logging.Level;
 
 public class BSListener implements org.bukkit.event.Listener {
     private final BetterSpawner plugin;
@@ -40,45 +37,36 @@ public class BSListener implements org.bukkit.event.Listener {
         this.plugin = plugin;
     }
 
-    public @Nullable ArmorStand getSpawnerHologram(Location loc) {
-        final List<Entity> armorStands = (List<Entity>) Objects.requireNonNull(loc.getWorld()).getNearbyEntities(loc, 1, 1, 1, entity -> {
-            if(!(entity instanceof ArmorStand)) return false;
-            final var container = entity.getPersistentDataContainer();
-            if(!container.has(plugin.keySpawnerLoc, PersistentDataType.STRING)) return false;
-            return Objects.equals(container.get(plugin.keySpawnerLoc, PersistentDataType.STRING), plugin.getSpawnerDataKey(loc));
-        });
-        if(armorStands.size() == 0) return null;
-        return (ArmorStand) armorStands.get(0);
-    }
-
     @EventHandler(priority = EventPriority.HIGH)
     public void onPlayerArmorStandManipulate(PlayerArmorStandManipulateEvent e) {
-        if(e.getRightClicked().getPersistentDataContainer().has(plugin.keySpawnerLoc, PersistentDataType.STRING)) {
+        if(plugin.getHolograms().isHologram(e.getRightClicked())) {
             e.setCancelled(true);
         }
     }
 
     @EventHandler(priority = EventPriority.NORMAL, ignoreCancelled = true)
     public void onSpawnerSpawn(SpawnerSpawnEvent e) {
-        final String key = plugin.getSpawnerDataKey(e.getSpawner().getBlock().getLocation());
-        final ConfigurationSection spawnerData = plugin.getSpawnerData().getConfigurationSection(key);
+        final CreatureSpawner spawner = e.getSpawner();
+        final SpawnerRegistry spawners = plugin.awaitSpawners(spawner.getBlock());
+        // 数据加载完成前推迟刷怪，避免把受管理的刷怪笼当作普通刷怪笼
+        if(spawners == null) {
+            e.setCancelled(true);
+            return;
+        }
+        final SpawnerRecord spawnerData = spawners.get(spawner.getWorld(), spawner.getX(), spawner.getY(), spawner.getZ());
         if(spawnerData == null) return;
 
-        int durability = spawnerData.getInt("durability", 0);
-        int maxDurability = spawnerData.getInt("maxDurability", durability);
-
-        Location loc = e.getSpawner().getBlock().getLocation();
-
-        if(maxDurability >= 0) {
-            final int ratio = plugin.getConfig().getInt("entity-ratio." + e.getEntityType(), 1);
+        if(!spawnerData.isUnlimited()) {
+            int durability = spawnerData.getDurability();
+            final int ratio = plugin.getSettings().getEntityRatio(e.getEntityType());
 
             durability -= ratio;
 
             if(durability <= 0) {
-                e.getSpawner().getBlock().setType(Material.AIR);
-                ArmorStand armorStand = getSpawnerHologram(loc);
-                if(armorStand != null) armorStand.remove();
-                plugin.getSpawnerData().set(key, null);
+                final Location loc = spawner.getLocation();
+                spawner.getBlock().setType(Material.AIR);
+                plugin.getHolograms().remove(spawnerData.getWorld(), spawnerData.getPos());
+                spawners.remove(spawner.getBlock());
                 plugin.saveSpawnerData();
 
                 plugin.getServer().getOnlinePlayers().forEach(p -> {
@@ -88,37 +76,14 @@ public class BSListener implements org.bukkit.event.Listener {
                 });
                 return;
             }
-            spawnerData.set("durability", durability);
+            spawnerData.setDurability(durability);
 
-            // 为了增加效率不再每刷出实体就保存数据，改为插件被卸载后保存
-            // plugin.saveSpawnerData();
+            // 耐久变化只写入计数表或追加到日志，不触发整个文件重写
+            spawners.durabilityChanged(spawnerData);
         }
 
         e.getEntity().setMetadata("no-punya", new org.bukkit.metadata.FixedMetadataValue(plugin, true));
-
-        final String hologram = plugin.i18n(maxDurability < 0 ? "spawner-hologram-unlimited": "spawner-hologram", Map.of(
-                "durability", String.valueOf(durability),
-                "maxDurability", String.valueOf(maxDurability),
-                "displayName", ItemUtil.getSpawnerDisplayName(plugin, spawnerData),
-                "entity", e.getEntityType().toString()
-        ));
-
-        if(hologram.isEmpty()) return;
-
-        ArmorStand armorStand = getSpawnerHologram(loc);
-        if(armorStand == null) {
-            armorStand = (ArmorStand) Objects.requireNonNull(loc.getWorld()).spawnEntity(loc.add(0.5, 0, 0.5), EntityType.ARMOR_STAND);
-            armorStand.setCanPickupItems(false);
-            armorStand.setCustomNameVisible(true);
-            armorStand.setVisible(false);
-            armorStand.setGravity(false);
-            armorStand.setCollidable(false);
-            armorStand.setAI(false);
-            armorStand.setSmall(true);
-            armorStand.getPersistentDataContainer().set(plugin.keySpawnerLoc, PersistentDataType.STRING, key);
-        }
-
-        armorStand.setCustomName(hologram);
+        plugin.getHolograms().markDirty(spawnerData, e.getEntityType());
     }
 
     @EventHandler(priority = EventPriority.NORMAL, ignoreCancelled = true)
@@ -139,30 +104,38 @@ public class BSListener implements org.bukkit.event.Listener {
             return;
         }
 
+        final SpawnerRegistry spawners = plugin.awaitSpawners(e.getBlockPlaced());
+        if(spawners == null) {
+            e.getPlayer().sendMessage(plugin.i18n("message-loading"));
+            e.setCancelled(true);
+            return;
+        }
+
         EntityType entityType = ((CreatureSpawner) meta.getBlockState()).getSpawnedType();
-        final ConfigurationSection spawnerData = new MemoryConfiguration();
-        spawnerData.set("type", entityType.toString());
-        spawnerData.set("displayName", meta.getDisplayName());
-        spawnerData.set("durability", container.get(plugin.keyDurability, PersistentDataType.INTEGER));
-        spawnerData.set("maxDurability", container.get(plugin.keyMaxDurability, PersistentDataType.INTEGER));
-        if(container.has(plugin.keyFlags, PersistentDataType.INTEGER))
-            spawnerData.set("flags", container.get(plugin.keyFlags, PersistentDataType.INTEGER));
+        final int durability = Objects.requireNonNull(container.get(plugin.keyDurability, PersistentDataType.INTEGER));
+        final Integer maxDurability = container.get(plugin.keyMaxDurability, PersistentDataType.INTEGER);
+        final Integer flags = container.get(plugin.keyFlags, PersistentDataType.INTEGER);
+        final String nbt = container.get(plugin.keyNBT, PersistentDataType.STRING);
+        final SpawnerRecord spawnerData = new SpawnerRecord(entityType,
+                durability,
+                maxDurability == null ? durability : maxDurability,
+                flags == null ? 0 : flags,
+                meta.getDisplayName(),
+                nbt);
 
         CreatureSpawner state = (CreatureSpawner) e.getBlockPlaced().getState();
-        if(container.has(plugin.keyNBT, PersistentDataType.STRING)) {
-            final var nbt = container.get(plugin.keyNBT, PersistentDataType.STRING);
-            spawnerData.set("nbt", nbt);
+        if(nbt != null) {
             try {
-                NBTUtil.setTileEntityNBT(state, MojangsonParser.parse(nbt));
+                NBTUtil.setTileEntityNBT(state, MojangsonParser.parseCached(nbt));
             } catch (Exception ex) {
-                ex.printStackTrace();
+                plugin.getLogger().log(Level.WARNING, "Could not apply the NBT of the spawner placed at " + e.getBlockPlaced().getLocation(), ex);
             }
         } else {
             state.setSpawnedType(entityType);
             state.update();
         }
 
-        plugin.getSpawnerData().set(plugin.getSpawnerDataKey(e.getBlockPlaced().getLocation()), spawnerData);
+        spawners.put(e.getBlockPlaced(), spawnerData);
         plugin.saveSpawnerData();
     }
 
@@ -170,26 +143,30 @@ public class BSListener implements org.bukkit.event.Listener {
     public void onBlockBreak(BlockBreakEvent e) {
         if(e.getBlock().getBlockData().getMaterial() != Material.SPAWNER) return;
 
+        final SpawnerRegistry spawners = plugin.awaitSpawners(e.getBlock());
+        if(spawners == null) {
+            e.getPlayer().sendMessage(plugin.i18n("message-loading"));
+            e.setCancelled(true);
+            return;
+        }
+
         e.setDropItems(false);
-        final String key = plugin.getSpawnerDataKey(e.getBlock().getLocation());
-        final ConfigurationSection spawnerData = plugin.getSpawnerData().getConfigurationSection(key);
+        final SpawnerRecord spawnerData = spawners.get(e.getBlock());
 
 
         final ItemStack itemInHand = e.getPlayer().getInventory().getItemInMainHand();
         if(spawnerData != null && itemInHand.getType().toString().endsWith("_PICKAXE") && itemInHand.containsEnchantment(Enchantment.SILK_TOUCH)) {
-            final int flags = spawnerData.getInt("flags");
-            final boolean denyBreak = (flags & 1) != 0;
-
-            if(!denyBreak) {
+            if(!spawnerData.isDenyBreak()) {
                 e.setExpToDrop(0);
                 e.getBlock().getWorld().dropItemNaturally(e.getBlock().getLocation(), ItemUtil.getSpawnerDropItem(plugin, ((CreatureSpawner) e.getBlock().getState()).getSpawnedType(), spawnerData));
             }
         }
 
-        ArmorStand armorStand = getSpawnerHologram(e.getBlock().getLocation());
-        if(armorStand != null) armorStand.remove();
-        plugin.getSpawnerData().set(key, null);
-        plugin.saveSpawnerData();
+        if(spawnerData != null) {
+            plugin.getHolograms().remove(spawnerData.getWorld(), spawnerData.getPos());
+            spawners.remove(e.getBlock());
+            plugin.saveSpawnerData();
+        }
     }
 
     @EventHandler(priority = EventPriority.LOW, ignoreCancelled = true)
@@ -206,16 +183,17 @@ public class BSListener implements org.bukkit.event.Listener {
         final EntityType type = EntityType.valueOf(spawnerEggName.substring(0, spawnerEggName.length() - 10));
         if(type == EntityType.UNKNOWN) return;
 
-        final boolean allowBypass = e.getPlayer().hasPermission("betterspawner.bypass");
-        final ConfigurationSection spawnerData = plugin.getSpawnerData().getConfigurationSection(plugin.getSpawnerDataKey(e.getClickedBlock().getLocation()));
-
-        boolean denyChange = false;
-        if(spawnerData != null) {
-            final int flags = spawnerData.getInt("flags");
-            denyChange = (flags & 1 << 1) != 0;
+        final SpawnerRegistry spawners = plugin.awaitSpawners(e.getClickedBlock());
+        if(spawners == null) {
+            e.getPlayer().sendMessage(plugin.i18n("message-loading"));
+            e.setCancelled(true);
+            return;
         }
 
-        if(spawnerData == null || denyChange) {
+        final boolean allowBypass = e.getPlayer().hasPermission("betterspawner.bypass");
+        final SpawnerRecord spawnerData = spawners.get(e.getClickedBlock());
+
+        if(spawnerData == null || spawnerData.isDenyChange()) {
             if(!allowBypass) {
                 e.setCancelled(true);
                 e.getPlayer().sendMessage(plugin.i18n("message-denied-change-spawner"));
@@ -224,7 +202,7 @@ public class BSListener implements org.bukkit.event.Listener {
         }
 
         e.setCancelled(true);
-        if(!plugin.getConfig().getStringList("allow-change").contains(type.toString()) && !allowBypass) {
+        if(!plugin.getSettings().isChangeAllowed(type) && !allowBypass) {
             e.getPlayer().sendMessage(plugin.i18n("message-denied-change", Map.of("entity", type.toString())));
             return;
         }
@@ -237,7 +215,9 @@ public class BSListener implements org.bukkit.event.Listener {
         state.update();
 
         e.getItem().setAmount(e.getItem().getAmount() - 1);
-        spawnerData.set("type", type.toString());
+        spawnerData.setType(type);
+        spawners.changed(spawnerData);
+        plugin.saveSpawnerData();
     }
 
     @EventHandler(priority = EventPriority.LOW, ignoreCancelled = true)
@@ -251,32 +231,35 @@ public class BSListener implements org.bukkit.event.Listener {
             }
         });
 
+        // 数据加载完成前刷怪笼不受爆炸影响
+        final SpawnerRegistry spawners = spawnerBlocks.isEmpty() ? null : plugin.awaitSpawners();
+        if(spawners == null) return;
+
+        final Settings settings = plugin.getSettings();
         spawnerBlocks.forEach(block -> {
+            // 区块数据仍在读取时刷怪笼不受爆炸影响
+            if(plugin.awaitSpawners(block) == null) return;
             EntityType spawnerType = ((CreatureSpawner) block.getState()).getSpawnedType();
 
-            final String key = plugin.getSpawnerDataKey(block.getLocation());
-            final ConfigurationSection spawnerData = plugin.getSpawnerData().getConfigurationSection(key);
+            final SpawnerRecord spawnerData = spawners.get(block);
 
             // 随机掉落自然生成的刷怪笼
             if(spawnerData == null) {
-                if(plugin.getConfig().getDouble("drop-chance") > Math.random()) {
+                if(settings.getDropChance() > Math.random()) {
                     block.setType(Material.AIR);
-                    ConfigurationSection newSpawnerData = new MemoryConfiguration();
 
-                    final int defaultDurability = plugin.getConfig().getInt("durability");
-                    newSpawnerData.set("durability", defaultDurability);
+                    final int defaultDurability = settings.getDurability();
+                    final SpawnerRecord newSpawnerData = new SpawnerRecord(spawnerType, defaultDurability, defaultDurability,
+                            settings.getDropFlags(), null, null);
                     block.getWorld().dropItemNaturally(block.getLocation(), ItemUtil.getSpawnerDropItem(plugin, spawnerType, newSpawnerData));
                 }
             } else {
-                final int flags = spawnerData.getInt("flags");
-                final boolean denyBreak = (flags & 1) != 0;
-                if(denyBreak) return;
+                if(spawnerData.isDenyBreak()) return;
 
                 block.setType(Material.AIR);
-                ArmorStand armorStand = getSpawnerHologram(block.getLocation());
-                if(armorStand != null) armorStand.remove();
+                plugin.getHolograms().remove(spawnerData.getWorld(), spawnerData.getPos());
 
-                plugin.getSpawnerData().set(key, null);
+                spawners.remove(block);
                 block.getWorld().dropItemNaturally(block.getLocation(), ItemUtil.getSpawnerDropItem(plugin, spawnerType, spawnerData));
             }
         });
@@ -1,20 +1,50 @@
 package com.hyun.betterspawner;
 
 import com.hyun.betterspawner.commands.BSCommand;
-import org.bukkit.Location;
+import com.hyun.betterspawner.storage.ChunkKey;
+import com.hyun.betterspawner.storage.ChunkLoadingStorage;
+import com.hyun.betterspawner.storage.ChunkSpawnerStore;
+import com.hyun.betterspawner.storage.DurabilityTable;
+import com.hyun.betterspawner.storage.SpawnerBackups;
+import com.hyun.betterspawner.storage.SpawnerDataWriter;
+import com.hyun.betterspawner.storage.SpawnerJournal;
+import com.hyun.betterspawner.storage.SpawnerMigrator;
+import com.hyun.betterspawner.storage.SpawnerRegistry;
+import com.hyun.betterspawner.storage.SpawnerStorage;
+import com.hyun.betterspawner.storage.SpawnerWorkingSet;
 import org.bukkit.NamespacedKey;
-import org.bukkit.configuration.file.FileConfiguration;
-import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.block.Block;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.Level;
 
 public final class BetterSpawner extends JavaPlugin {
-    private FileConfiguration spawnerData;
-    private File spawnerDataFile;
+    // 后台加载完成并在主线程接管之前为 null
+    private SpawnerRegistry spawners;
+    private CompletableFuture<SpawnerRegistry> loading;
+    private boolean loadWaitExpired;
+    private SpawnerStorage spawnerStorage;
+    // 本次启动自动迁移的进度，供指令查询
+    private volatile SpawnerMigrator migration;
+    private SpawnerBackups backups;
+    private SpawnerJournal spawnerJournal;
+    private SpawnerDataWriter spawnerDataWriter;
+    private DurabilityTable counters;
+    private ChunkSpawnerStore chunkStore;
+    // 为 true 时启用后只加载已加载区块的数据，加载线程写入后经 loading 同步到主线程
+    private boolean workingSet;
+    private SpawnerWorkingSet spawnerWorkingSet;
+    // 区块存储模式下待导入区块的旧数据
+    private SpawnerRegistry pendingImport;
+    private File pendingImportFile;
+    private HologramRegistry holograms;
+    private volatile Settings settings;
 
     public final NamespacedKey keyDurability = new NamespacedKey(this, "durability");
     public final NamespacedKey keyMaxDurability = new NamespacedKey(this, "maxDurability");
@@ -23,19 +53,119 @@ public final class BetterSpawner extends JavaPlugin {
     public final NamespacedKey keyNBT = new NamespacedKey(this, "nbt");
     public final I18n i18n = new I18n( this);
 
-    public FileConfiguration getSpawnerData() {
-        return spawnerData;
+    /**
+     * Gets the registry.
+     *
+     * @return the registry, or null while the data is still loading
+     */
+    public SpawnerRegistry getSpawners() {
+        return spawners;
     }
 
-    public String getSpawnerDataKey(Location loc) {
-        return Objects.requireNonNull(loc.getWorld()).getName() + "." + loc.getBlockX() + "," + loc.getBlockY() + "," + loc.getBlockZ();
+    /**
+     * Gets the registry for an event touching spawners. The first call while the data is
+     * still loading blocks the main thread for at most {@code load-wait-timeout}, after
+     * that callers are expected to defer or cancel what they were doing.
+     *
+     * @return the registry, or null if the data is still loading
+     */
+    public @Nullable SpawnerRegistry awaitSpawners() {
+        if(spawners != null || loading == null) return spawners;
+        if(!loading.isDone() && !loadWaitExpired) {
+            try {
+                loading.get(settings.getLoadWaitTimeout(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                loadWaitExpired = true;
+                getLogger().warning("Spawner data is still loading, spawner events are cancelled until it is done");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ignored) {
+                // 由 finishLoading 报告
+            }
+        }
+        finishLoading();
+        return spawners;
+    }
+
+    /**
+     * Gets the registry for an event touching the spawner at a block. Like {@link #awaitSpawners()},
+     * but also returns null while the working set is still reading the block's chunk.
+     *
+     * @param block the block
+     * @return the registry, or null if the spawner's data is still loading
+     */
+    public @Nullable SpawnerRegistry awaitSpawners(Block block) {
+        final SpawnerRegistry registry = awaitSpawners();
+        if(registry == null || spawnerWorkingSet == null) return registry;
+        return spawnerWorkingSet.isLoading(new ChunkKey(block.getWorld().getUID(), block.getX() >> 4, block.getZ() >> 4)) ? null : registry;
+    }
+
+    /**
+     * Gets the migration from another storage format run on this start.
+     *
+     * @return the migration, or null if none was needed
+     */
+    public @Nullable SpawnerMigrator getMigration() {
+        return migration;
+    }
+
+    /**
+     * Gets the backups of the spawner data.
+     *
+     * @return the backups, or null with chunk storage
+     */
+    public @Nullable SpawnerBackups getBackups() {
+        return backups;
+    }
+
+    /**
+     * Saves the pending changes and takes a backup on the writer thread.
+     *
+     * @return completes on the writer thread with the new backup, or null if backups need a positive {@code save-interval}
+     */
+    public @Nullable CompletableFuture<SpawnerBackups.Backup> backupSpawnerData() {
+        if(spawnerDataWriter == null || backups == null) return null;
+        return spawnerDataWriter.backup();
+    }
+
+    public Settings getSettings() {
+        return settings;
     }
 
+    /**
+     * Reloads config.yml and swaps in a freshly compiled {@link Settings}.
+     */
+    public void reloadSettings() {
+        reloadConfig();
+        settings = Settings.load(getConfig(), getLogger());
+        if(holograms != null) holograms.start(settings.getHologramUpdateInterval());
+    }
+
+    public HologramRegistry getHolograms() {
+        return holograms;
+    }
+
+    /**
+     * Persists the spawner data. With a positive {@code save-interval} this only
+     * marks the data dirty and the write happens later on the writer thread.
+     * With chunk storage the chunks are already marked dirty and this does nothing.
+     */
     public void saveSpawnerData() {
+        if(chunkStore != null) return;
+        if(spawnerDataWriter != null) {
+            spawnerDataWriter.markDirty();
+            return;
+        }
+        writeSpawnerData();
+    }
+
+    private boolean writeSpawnerData() {
         try {
-            spawnerData.save(spawnerDataFile);
+            spawnerStorage.save(spawners.snapshot(spawnerStorage.supportsPartialSnapshots()));
+            return true;
         } catch (IOException ex) {
-            getLogger().log(Level.SEVERE, "Could not save config to " + spawnerDataFile, ex);
+            getLogger().log(Level.SEVERE, "Could not save config to " + spawnerStorage.getFile(), ex);
+            return false;
         }
     }
     public String i18n(String key, Map<String, String> replace) {
@@ -43,30 +173,226 @@ public final class BetterSpawner extends JavaPlugin {
     }
 
     public String i18n(String key) {
-        return i18n(key, Map.of());
+        return i18n.template(key).render();
     }
 
-    @SuppressWarnings("ResultOfMethodCallIgnored")
     @Override
     public void onLoad() {
         saveDefaultConfig();
+        settings = Settings.load(getConfig(), getLogger());
+
+        spawnerJournal = new SpawnerJournal(new File(getDataFolder(), "spawnerData.journal"));
+        final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+            final Thread thread = new Thread(r, "BetterSpawner-Loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if(settings.getStorageFormat().equalsIgnoreCase("chunk")) {
+            loading = CompletableFuture.supplyAsync(this::loadChunkMode, loader);
+            loader.shutdown();
+            return;
+        }
+
+        String format = settings.getStorageFormat();
+        try {
+            spawnerStorage = SpawnerStorage.create(format, getDataFolder(), settings.getSaveGenerations());
+        } catch (IllegalArgumentException e) {
+            getLogger().warning(e.getMessage() + ", falling back to yaml");
+            format = "yaml";
+            spawnerStorage = SpawnerStorage.create(format, getDataFolder(), settings.getSaveGenerations());
+        }
+
+        if(settings.isDurabilityTable()) {
+            try {
+                counters = DurabilityTable.open(new File(getDataFolder(), "spawnerData.counters"));
+            } catch (IOException ex) {
+                getLogger().log(Level.WARNING, "Could not open the durability table, logging durability changes instead", ex);
+            }
+        }
+
+        // 通过 /betterspawner backup restore 预约的恢复在读取之前进行，不再从其他格式迁移
+        backups = new SpawnerBackups(new File(getDataFolder(), "backups"), spawnerStorage,
+                settings.getBackupFullEvery(), settings.getBackupMaxCount(), settings.getBackupMaxAge());
+        final SpawnerBackups.Backup restore = backups.getPendingRestore(getLogger());
+
+        // 切换存储格式后首次启动，从另一种格式的文件迁移数据
+        SpawnerStorage migrationSource = null;
+        if(restore == null && !spawnerStorage.hasData()) {
+            for (String other : new String[]{"yaml", "nbt", "sqlite", "region"}) {
+                final SpawnerStorage source = SpawnerStorage.create(other, getDataFolder(), settings.getSaveGenerations());
+                if(source.getClass() != spawnerStorage.getClass() && source.hasData()) {
+                    migrationSource = source;
+                    migration = new SpawnerMigrator(source, format, spawnerStorage);
+                    break;
+                }
+            }
+        }
+
+        // 工作集模式只在需要重放日志或迁移时完整读取一次
+        workingSet = isWorkingSetSupported();
+        if(restore == null && migration == null && canSkipLoading()) {
+            loading = CompletableFuture.completedFuture(new SpawnerRegistry());
+            loader.shutdown();
+            return;
+        }
+
+        // 恢复、迁移、读取和重放都在后台线程进行，服务器启动不等待
+        final String storageFormat = format;
+        final SpawnerStorage source = migrationSource;
+        loading = CompletableFuture.supplyAsync(() -> {
+            if(restore != null) restoreBackup(restore, storageFormat);
+            return source == null ? loadSpawners(spawnerStorage, null) : migrateSpawners(source);
+        }, loader);
+        loader.shutdown();
+    }
+
+    private void restoreBackup(SpawnerBackups.Backup backup, String format) {
+        getLogger().info("Restoring backup " + backup.id() + " into " + spawnerStorage.getFile().getName());
+        try {
+            final long count = backups.restore(backup, format, spawnerStorage, getLogger());
+            // 日志和计数表记录的是被替换掉的数据
+            spawnerJournal.discard();
+            if(counters != null) counters.clear();
+            getLogger().info("Restored " + count + " spawners from backup " + backup.id()
+                    + ", the previous data was kept as " + spawnerStorage.getFile().getName() + ".before-" + backup.id());
+        } catch (IOException ex) {
+            getLogger().log(Level.SEVERE, "Could not restore backup " + backup.id() + ", keeping the current data", ex);
+        } finally {
+            backups.clearRestore();
+        }
+    }
+
+    private boolean canSkipLoading() {
+        return workingSet && !spawnerJournal.exists() && (counters == null || counters.isEmpty());
+    }
+
+    // 流式迁移，不把旧数据整个读入内存；失败时退回到整体读入后保存
+    private SpawnerRegistry migrateSpawners(SpawnerStorage source) {
+        final File migrated = source.getFile();
+        getLogger().info("Migrating spawners from " + migrated.getName() + " to " + spawnerStorage.getFile().getName());
+        final long count;
+        try {
+            count = migration.run(getLogger());
+        } catch (IOException ex) {
+            getLogger().log(Level.SEVERE, "Could not migrate " + migrated.getName() + ", loading it as a whole instead", ex);
+            return loadSpawners(source, migrated);
+        } finally {
+            source.close();
+        }
+
+        if(markMigrated(migrated)) {
+            getLogger().info("Migrated " + count + " spawners from " + migrated.getName() + " to " + spawnerStorage.getFile().getName()
+                    + " in " + migration.getElapsed() + " ms");
+        }
+        // 日志基于旧格式的快照，迁移后的数据与之相同，照常重放
+        if(canSkipLoading()) return new SpawnerRegistry();
+        return loadSpawners(spawnerStorage, null);
+    }
 
-        spawnerDataFile = new File(getDataFolder(), "spawnerData.yml");
-        if (!spawnerDataFile.exists()) {
+    private SpawnerRegistry loadSpawners(SpawnerStorage source, @Nullable File migrated) {
+        SpawnerRegistry registry;
+        try {
+            registry = source.load(getLogger());
+            registry.markClean();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to load " + source.getFile(), ex);
+        } finally {
+            if(source != spawnerStorage) source.close();
+        }
+
+        // 重放上次未压缩的日志并立即写入快照，之后从空日志开始
+        final int replayed = spawnerJournal.replay(registry, getLogger());
+        if(replayed > 0) {
+            getLogger().info("Replayed " + replayed + " journal entries");
+        }
+        // 计数表中的耐久比日志更新，最后应用
+        final int restored = counters == null ? 0 : counters.restore(registry, getLogger());
+        if(restored > 0) {
+            getLogger().info("Restored the durability of " + restored + " spawners from " + counters.getFile().getName());
+        }
+        if(replayed > 0 || restored > 0 || migrated != null) {
             try {
-                spawnerDataFile.createNewFile();
-            } catch (IOException e) {
-                getLogger().log(java.util.logging.Level.SEVERE, "Failed to create spawnerData.yml");
-                getPluginLoader().disablePlugin(this);
-                return;
+                spawnerStorage.save(registry.snapshot());
+                spawnerJournal.discard();
+                if(migrated != null && markMigrated(migrated)) {
+                    getLogger().info("Migrated " + registry.size() + " spawners from " + migrated.getName() + " to " + spawnerStorage.getFile().getName());
+                }
+            } catch (IOException ex) {
+                getLogger().log(Level.SEVERE, "Could not save config to " + spawnerStorage.getFile(), ex);
+                // 存储中不是最新数据，本次保留完整数据
+                workingSet = false;
             }
         }
-        spawnerData = YamlConfiguration.loadConfiguration(spawnerDataFile);
+        // 内存中已是最新数据，启用时重新分配槽位
+        if(counters != null) counters.clear();
+        if(workingSet) registry = new SpawnerRegistry();
+        return registry;
+    }
+
+    private boolean isWorkingSetSupported() {
+        if(!settings.isWorkingSet()) return false;
+        if(!(spawnerStorage instanceof ChunkLoadingStorage) || !spawnerStorage.supportsPartialSnapshots()) {
+            getLogger().warning("working-set requires the region or sqlite storage format, keeping every spawner in memory");
+            return false;
+        }
+        if(settings.getSaveInterval() <= 0) {
+            getLogger().warning("working-set requires a positive save-interval, keeping every spawner in memory");
+            return false;
+        }
+        return true;
+    }
+
+    // 区块存储模式不在内存中保留未加载区块的数据，其他格式的旧数据在启用时导入区块
+    private SpawnerRegistry loadChunkMode() {
+        for (String format : new String[]{"yaml", "nbt", "sqlite", "region"}) {
+            final SpawnerStorage other = SpawnerStorage.create(format, getDataFolder(), settings.getSaveGenerations());
+            if(!other.hasData()) continue;
+            try {
+                pendingImport = other.load(getLogger());
+                pendingImportFile = other.getFile();
+            } catch (IOException ex) {
+                getLogger().log(Level.SEVERE, "Failed to load " + other.getFile(), ex);
+            } finally {
+                other.close();
+            }
+            break;
+        }
+        if(spawnerJournal.getFile().exists()) {
+            if(pendingImport == null) pendingImport = new SpawnerRegistry();
+            spawnerJournal.replay(pendingImport, getLogger());
+        }
+        // 之前的存储格式留下的计数表比快照和日志更新
+        final File countersFile = new File(getDataFolder(), "spawnerData.counters");
+        if(pendingImport != null && countersFile.isFile()) {
+            try {
+                final DurabilityTable table = DurabilityTable.open(countersFile);
+                table.restore(pendingImport, getLogger());
+                table.close();
+            } catch (IOException ex) {
+                getLogger().log(Level.WARNING, "Could not read " + countersFile.getName() + ", importing the durability of the last save", ex);
+            }
+        }
+        return new SpawnerRegistry();
+    }
+
+    // 已迁移的数据连同旧版本改名保留，之后不会再被当作待迁移的数据
+    private boolean markMigrated(File migrated) {
+        try {
+            SpawnerMigrator.moveAside(migrated, ".migrated");
+            return true;
+        } catch (IOException ex) {
+            getLogger().log(Level.WARNING, "Could not rename " + migrated.getName() + " after migrating it", ex);
+            return false;
+        }
     }
 
     @Override
     public void onEnable() {
         // Plugin startup logic
+        holograms = new HologramRegistry(this);
+        getServer().getWorlds().forEach(holograms::scan);
+        getServer().getPluginManager().registerEvents(holograms, this);
+        holograms.start(settings.getHologramUpdateInterval());
         getServer().getPluginManager().registerEvents(new BSListener(this), this);
 
         final var command = getCommand("betterspawner");
@@ -75,10 +401,124 @@ public final class BetterSpawner extends JavaPlugin {
         final var bsCommand = new BSCommand(this);
         command.setExecutor(bsCommand);
         command.setTabCompleter(bsCommand);
+
+        if(loading.isDone()) {
+            finishLoading();
+        } else {
+            loading.whenComplete((registry, ex) -> {
+                if(isEnabled()) getServer().getScheduler().runTask(this, this::finishLoading);
+            });
+        }
+    }
+
+    // 在主线程接管加载结果，由调度任务或第一个等待的事件调用
+    private void finishLoading() {
+        if(spawners != null || loading == null || !loading.isDone() || !isEnabled()) return;
+        try {
+            spawners = loading.join();
+        } catch (CompletionException | CancellationException e) {
+            getLogger().log(Level.SEVERE, "Failed to load the spawner data", e.getCause());
+            loading = null;
+            getPluginLoader().disablePlugin(this);
+            return;
+        }
+
+        // 区块存储模式的耐久随区块容器保存，不使用计数表
+        if(counters != null && spawnerStorage != null) spawners.setCounters(counters);
+        if(spawnerStorage == null) {
+            enableChunkMode();
+        } else if(settings.getSaveInterval() > 0) {
+            spawnerDataWriter = new SpawnerDataWriter(this, spawnerStorage, spawnerJournal, settings.getJournalCompactSize());
+            spawners.setObserver(spawnerJournal);
+            if(counters != null) spawnerDataWriter.setCounters(counters);
+            if(workingSet) enableWorkingSet();
+            spawnerDataWriter.start(settings.getSaveInterval() * 20L, settings.getCompactInterval() * 20L);
+            spawnerDataWriter.startBackups(backups, settings.getBackupInterval() * 60L * 20L);
+        } else if(settings.getBackupInterval() > 0) {
+            getLogger().warning("backup-interval requires a positive save-interval, spawner data is not backed up");
+        }
+    }
+
+    private void enableWorkingSet() {
+        spawnerWorkingSet = new SpawnerWorkingSet(this, spawners, (ChunkLoadingStorage) spawnerStorage, settings.getWorkingSetCacheSize());
+        getServer().getWorlds().forEach(spawnerWorkingSet::scan);
+        getServer().getPluginManager().registerEvents(spawnerWorkingSet, this);
+        spawnerDataWriter.setWorkingSet(spawnerWorkingSet);
+    }
+
+    private void enableChunkMode() {
+        chunkStore = new ChunkSpawnerStore(this, spawners);
+        getServer().getWorlds().forEach(chunkStore::scan);
+        spawners.setObserver(chunkStore);
+        getServer().getPluginManager().registerEvents(chunkStore, this);
+        if(pendingImport == null) return;
+
+        final int skipped = chunkStore.importRecords(pendingImport);
+        if(skipped > 0 || pendingImport.snapshot().unresolved().size() > 0) {
+            getLogger().warning(skipped + " spawners are in worlds which are not loaded, keeping " + pendingImportFile + " to import them later");
+        } else {
+            spawnerJournal.discard();
+            // 计数表中的耐久已随导入写入区块
+            final File countersFile = new File(getDataFolder(), "spawnerData.counters");
+            if(countersFile.exists()) markMigrated(countersFile);
+            if(pendingImportFile != null && markMigrated(pendingImportFile)) {
+                getLogger().info("Migrated " + pendingImport.size() + " spawners from " + pendingImportFile.getName() + " to chunk storage");
+            }
+        }
+        pendingImport = null;
     }
 
     @Override
     public void onDisable() {
-        saveSpawnerData();
+        if(spawners == null) {
+            // 仍在后台加载时等待启动快照写完，此前没有事件修改过数据
+            if(loading != null && !loading.isDone()) {
+                try {
+                    loading.get(settings.getSaveTimeout(), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (TimeoutException e) {
+                    getLogger().warning("Timed out while waiting for the spawner data to load, the startup save may be incomplete");
+                } catch (ExecutionException ignored) {
+                }
+            }
+            // 数据未被接管，计数表保留给下次启动
+            if(counters != null) {
+                counters.close();
+                counters = null;
+            }
+            if(spawnerStorage != null) spawnerStorage.close();
+            return;
+        }
+        if(chunkStore != null) {
+            chunkStore.flush();
+            spawners.setObserver(null);
+            chunkStore = null;
+            if(counters != null) {
+                counters.close();
+                counters = null;
+            }
+            return;
+        }
+        if(spawnerWorkingSet != null) {
+            spawnerWorkingSet.close();
+            spawnerWorkingSet = null;
+        }
+        final boolean saved;
+        if(spawnerDataWriter != null) {
+            saved = spawnerDataWriter.shutdown(settings.getSaveTimeout());
+            spawnerDataWriter = null;
+            spawners.setObserver(null);
+        } else {
+            saved = writeSpawnerData();
+        }
+        if(counters != null) {
+            spawners.setCounters(null);
+            // 保存失败时保留计数表，下次启动时恢复
+            if(saved) counters.clear();
+            counters.close();
+            counters = null;
+        }
+        spawnerStorage.close();
     }
 }
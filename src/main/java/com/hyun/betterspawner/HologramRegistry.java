@@ -0,0 +1,209 @@
+package com.hyun.betterspawner;
+
+import com.hyun.betterspawner.storage.SpawnerRecord;
+import com.hyun.betterspawner.utils.BlockPos;
+import com.hyun.betterspawner.utils.ItemUtil;
+import com.hyun.betterspawner.utils.LongObjectMap;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.ArmorStand;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.world.EntitiesLoadEvent;
+import org.bukkit.event.world.EntitiesUnloadEvent;
+import org.bukkit.persistence.PersistentDataType;
+import org.bukkit.scheduler.BukkitTask;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Keeps track of the hologram armor stand of every spawner.
+ */
+public class HologramRegistry implements org.bukkit.event.Listener {
+    private final BetterSpawner plugin;
+    private final Map<UUID, LongObjectMap<ArmorStand>> worlds = new HashMap<>();
+    // IdentityHashMap 不为每个条目分配对象，值为最后刷出的实体类型
+    private final Map<SpawnerRecord, EntityType> dirty = new IdentityHashMap<>();
+    private final StringBuilder builder = new StringBuilder();
+    private final HologramArgs args = new HologramArgs();
+    private BukkitTask task;
+
+    public HologramRegistry(BetterSpawner plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Starts rendering dirty holograms every {@code intervalTicks} ticks, replacing the
+     * previous schedule.
+     *
+     * @param intervalTicks the flush interval in ticks
+     */
+    public void start(long intervalTicks) {
+        if(task != null) task.cancel();
+        task = plugin.getServer().getScheduler().runTaskTimer(plugin, this::flush, intervalTicks, intervalTicks);
+    }
+
+    /**
+     * Schedules the hologram of a spawner to be refreshed on the next flush.
+     *
+     * @param record the spawner
+     * @param entityType the type of the entity which was just spawned
+     */
+    public void markDirty(SpawnerRecord record, EntityType entityType) {
+        dirty.put(record, entityType);
+    }
+
+    /**
+     * Renders every dirty hologram once and updates the armor stands whose text changed.
+     */
+    public void flush() {
+        if(dirty.isEmpty()) return;
+        dirty.forEach(this::update);
+        dirty.clear();
+    }
+
+    private void update(SpawnerRecord record, EntityType entityType) {
+        final UUID worldId = record.getWorld();
+        // 刷怪笼在等待刷新期间已被移除
+        if(worldId == null) return;
+
+        args.record = record;
+        args.entityType = entityType;
+        builder.setLength(0);
+        plugin.i18n.template(record.isUnlimited() ? "spawner-hologram-unlimited": "spawner-hologram").appendTo(builder, args);
+        if(builder.length() == 0) return;
+
+        final long pos = record.getPos();
+        ArmorStand armorStand = get(worldId, pos);
+        if(armorStand == null) {
+            final World world = plugin.getServer().getWorld(worldId);
+            final int x = BlockPos.getX(pos), y = BlockPos.getY(pos), z = BlockPos.getZ(pos);
+            if(world == null || !world.isChunkLoaded(x >> 4, z >> 4)) return;
+
+            armorStand = (ArmorStand) world.spawnEntity(new Location(world, x + 0.5, y, z + 0.5), EntityType.ARMOR_STAND);
+            armorStand.setCanPickupItems(false);
+            armorStand.setCustomNameVisible(true);
+            armorStand.setVisible(false);
+            armorStand.setGravity(false);
+            armorStand.setCollidable(false);
+            armorStand.setAI(false);
+            armorStand.setSmall(true);
+            armorStand.getPersistentDataContainer().set(plugin.keySpawnerLoc, PersistentDataType.BYTE, (byte) 1);
+            register(worldId, pos, armorStand);
+        } else {
+            final String current = armorStand.getCustomName();
+            if(current != null && current.contentEquals(builder)) return;
+        }
+
+        armorStand.setCustomName(builder.toString());
+    }
+
+    private class HologramArgs implements I18n.Args {
+        private SpawnerRecord record;
+        private EntityType entityType;
+
+        @Override
+        public boolean append(StringBuilder sb, String name) {
+            switch (name) {
+                case "durability" -> sb.append(record.getDurability());
+                case "maxDurability" -> sb.append(record.getMaxDurability());
+                case "displayName" -> sb.append(ItemUtil.getSpawnerDisplayName(plugin, record));
+                case "entity" -> sb.append(entityType);
+                default -> {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    public boolean isHologram(Entity entity) {
+        if(!(entity instanceof ArmorStand)) return false;
+        // 只作为标记，旧版本写入的是刷怪笼位置的字符串
+        final var container = entity.getPersistentDataContainer();
+        return container.has(plugin.keySpawnerLoc, PersistentDataType.BYTE) || container.has(plugin.keySpawnerLoc, PersistentDataType.STRING);
+    }
+
+    /**
+     * Gets the hologram of the spawner at the given position.
+     *
+     * @param world the world uid
+     * @param pos the packed block position of the spawner
+     * @return the hologram, or null if there is none or it is not loaded
+     */
+    public @Nullable ArmorStand get(UUID world, long pos) {
+        final LongObjectMap<ArmorStand> holograms = worlds.get(world);
+        if(holograms == null) return null;
+        final ArmorStand armorStand = holograms.get(pos);
+        if(armorStand == null) return null;
+        if(!armorStand.isValid()) {
+            holograms.remove(pos);
+            return null;
+        }
+        return armorStand;
+    }
+
+    public void register(UUID world, long pos, ArmorStand armorStand) {
+        worlds.computeIfAbsent(world, k -> new LongObjectMap<>()).put(pos, armorStand);
+    }
+
+    /**
+     * Removes the hologram of the spawner at the given position from the world.
+     *
+     * @param world the world uid
+     * @param pos the packed block position of the spawner
+     */
+    public void remove(UUID world, long pos) {
+        final LongObjectMap<ArmorStand> holograms = worlds.get(world);
+        if(holograms == null) return;
+        final ArmorStand armorStand = holograms.remove(pos);
+        if(armorStand != null) armorStand.remove();
+    }
+
+    /**
+     * Registers the holograms of all entities which are already loaded,
+     * needed when the plugin is enabled after the worlds.
+     *
+     * @param world the world to scan
+     */
+    public void scan(World world) {
+        for (ArmorStand armorStand : world.getEntitiesByClass(ArmorStand.class)) {
+            track(armorStand);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntitiesLoad(EntitiesLoadEvent e) {
+        for (Entity entity : e.getEntities()) {
+            track(entity);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntitiesUnload(EntitiesUnloadEvent e) {
+        for (Entity entity : e.getEntities()) {
+            if(!isHologram(entity)) continue;
+            final LongObjectMap<ArmorStand> holograms = worlds.get(entity.getWorld().getUID());
+            if(holograms == null) continue;
+            final long pos = getPos(entity.getLocation());
+            // 只移除同一个实体，避免误删已被替换的全息图
+            if(holograms.get(pos) == entity) holograms.remove(pos);
+        }
+    }
+
+    private void track(Entity entity) {
+        if(!isHologram(entity)) return;
+        register(entity.getWorld().getUID(), getPos(entity.getLocation()), (ArmorStand) entity);
+    }
+
+    // 全息图生成在刷怪笼方块中心，所在方块坐标就是刷怪笼坐标
+    private static long getPos(Location loc) {
+        return BlockPos.asLong(loc.getBlockX(), loc.getBlockY(), loc.getBlockZ());
+    }
+}
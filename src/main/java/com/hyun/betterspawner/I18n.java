@@ -1,28 +1,134 @@
 package com.hyun.betterspawner;
 
-import com.google.common.base.Charsets;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.plugin.Plugin;
 
 import java.io.File;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 @SuppressWarnings("unchecked")
 public class I18n {
-    private static String f(String raw, Map<String, String> replace) {
-        for (Map.Entry<String, String> entry : replace.entrySet()) {
-            raw = raw.replace("{" + entry.getKey() + "}", entry.getValue());
-        }
-        return org.bukkit.ChatColor.translateAlternateColorCodes('&', raw);
+    /**
+     * Supplies the values of placeholders while a {@link Template} is rendered.
+     */
+    @FunctionalInterface
+    public interface Args {
+        Args NONE = (sb, name) -> false;
+
+        /**
+         * Appends the value of a placeholder.
+         *
+         * @param sb the builder to append to
+         * @param name the placeholder name, without braces
+         * @return false if the placeholder is unknown and should be kept as is
+         */
+        boolean append(StringBuilder sb, String name);
     }
 
-    private static List<String> f(List<String> raw, Map<String, String> replace) {
-        return raw.stream().map(i->f(i, replace)).toList();
+    /**
+     * A message compiled into literal segments and placeholder slots.
+     * <p>
+     * Color codes are translated once when the template is compiled, so rendering
+     * is a plain sequence of appends into a caller owned StringBuilder. Color codes in
+     * placeholder values are translated in place while they are appended.
+     */
+    public static class Template {
+        private static final String COLOR_CODES = "0123456789AaBbCcDdEeFfKkLlMmNnOoRrXx";
+
+        private final String[] literals;
+        private final String[] names;
+        private final String constant;
+
+        private Template(String[] literals, String[] names) {
+            this.literals = literals;
+            this.names = names;
+            this.constant = names.length == 0 ? literals[0] : null;
+        }
+
+        private static Template compile(String raw) {
+            final List<String> literals = new ArrayList<>();
+            final List<String> names = new ArrayList<>();
+            int start = 0;
+            int open;
+            while ((open = raw.indexOf('{', start)) >= 0) {
+                final int close = raw.indexOf('}', open + 1);
+                if(close < 0) break;
+                final String name = raw.substring(open + 1, close);
+                // 嵌套或含空白的花括号当作普通文本（例如 NBT）
+                if(name.isEmpty() || name.indexOf('{') >= 0 || name.indexOf(' ') >= 0) {
+                    start = open + 1;
+                    continue;
+                }
+                literals.add(raw.substring(0, open));
+                names.add(name);
+                raw = raw.substring(close + 1);
+                start = 0;
+            }
+            literals.add(raw);
+            return new Template(literals.stream().map(l -> org.bukkit.ChatColor.translateAlternateColorCodes('&', l)).toArray(String[]::new),
+                    names.toArray(new String[0]));
+        }
+
+        /**
+         * Appends the rendered message.
+         *
+         * @param sb the builder to append to
+         * @param args the placeholder values
+         */
+        public void appendTo(StringBuilder sb, Args args) {
+            sb.append(literals[0]);
+            for (int i = 0; i < names.length; i++) {
+                final int start = sb.length();
+                if(args.append(sb, names[i])) {
+                    translateColorCodes(sb, start);
+                } else {
+                    sb.append('{').append(names[i]).append('}');
+                }
+                sb.append(literals[i + 1]);
+            }
+        }
+
+        // 与 ChatColor.translateAlternateColorCodes 相同，替换进来的值（例如显示名）中的 & 颜色代码也生效
+        private static void translateColorCodes(StringBuilder sb, int start) {
+            for (int i = start; i < sb.length() - 1; i++) {
+                if(sb.charAt(i) == '&' && COLOR_CODES.indexOf(sb.charAt(i + 1)) >= 0) {
+                    sb.setCharAt(i, org.bukkit.ChatColor.COLOR_CHAR);
+                    sb.setCharAt(i + 1, Character.toLowerCase(sb.charAt(i + 1)));
+                }
+            }
+        }
+
+        /**
+         * Renders the message, reusing the given builder.
+         *
+         * @param sb the builder to render into, it is cleared first
+         * @param args the placeholder values
+         * @return the rendered message
+         */
+        public String render(StringBuilder sb, Args args) {
+            if(constant != null) return constant;
+            sb.setLength(0);
+            appendTo(sb, args);
+            return sb.toString();
+        }
+
+        public String render(Args args) {
+            return constant != null ? constant : render(new StringBuilder(), args);
+        }
+
+        public String render() {
+            return render(Args.NONE);
+        }
     }
+
     private FileConfiguration messageData;
+    private final Map<String, Template> templates = new HashMap<>();
     Plugin plugin;
     private String lang;
 
@@ -48,20 +154,46 @@ public class I18n {
         messageData = YamlConfiguration.loadConfiguration(messageFile);
 
         final var defaults = plugin.getResource(lang);
-        if(defaults != null) messageData.setDefaults(YamlConfiguration.loadConfiguration(new InputStreamReader(defaults, Charsets.UTF_8)));
+        final YamlConfiguration defaultData = defaults == null ? null : YamlConfiguration.loadConfiguration(new InputStreamReader(defaults, StandardCharsets.UTF_8));
+        if(defaultData != null) messageData.setDefaults(defaultData);
+
+        templates.clear();
+        for (String key : messageData.getKeys(false)) templates.put(key, compile(key));
+        if(defaultData != null) {
+            for (String key : defaultData.getKeys(false)) templates.computeIfAbsent(key, this::compile);
+        }
     }
 
-    public String message(String key, Map<String, String> replace) {
+    private Template compile(String key) {
         Object raw = messageData.get(key);
         if(raw instanceof String message) {
-            return f(message, replace);
+            return Template.compile(message);
         }
 
         if(raw instanceof List<?> messages) {
             if(messages.stream().allMatch(i->i instanceof String))
-                return String.join("\n", f((List<String>) messages, replace).stream().toList());
+                return Template.compile(String.join("\n", (List<String>) messages));
         }
 
-        return "Invalid message type: " + (raw == null? "null": raw.getClass().getSimpleName());
+        return new Template(new String[]{"Invalid message type: " + (raw == null? "null": raw.getClass().getSimpleName())}, new String[0]);
+    }
+
+    /**
+     * Gets the compiled template of a message.
+     *
+     * @param key the message key
+     * @return the template
+     */
+    public Template template(String key) {
+        return templates.computeIfAbsent(key, this::compile);
+    }
+
+    public String message(String key, Map<String, String> replace) {
+        return template(key).render((sb, name) -> {
+            final String value = replace.get(name);
+            if(value == null) return false;
+            sb.append(value);
+            return true;
+        });
     }
 }
@@ -0,0 +1,227 @@
+package com.hyun.betterspawner;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.EntityType;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * An immutable snapshot of config.yml.
+ */
+public final class Settings {
+    private final double dropChance;
+    private final int dropFlags;
+    private final int durability;
+    private final int[] entityRatio;
+    private final Set<EntityType> allowChange;
+    private final int hologramUpdateInterval;
+    private final int saveInterval;
+    private final int compactInterval;
+    private final int saveGenerations;
+    private final long saveTimeout;
+    private final long loadWaitTimeout;
+    private final long journalCompactSize;
+    private final String storageFormat;
+    private final boolean workingSet;
+    private final boolean durabilityTable;
+    private final int workingSetCacheSize;
+    private final int backupInterval;
+    private final int backupFullEvery;
+    private final int backupMaxCount;
+    private final long backupMaxAge;
+
+    private Settings(ConfigurationSection config, Logger logger) {
+        dropChance = config.getDouble("drop-chance");
+        dropFlags = config.getInt("drop-flags");
+        durability = config.getInt("durability");
+        hologramUpdateInterval = Math.max(1, config.getInt("hologram-update-interval", 10));
+        saveInterval = config.getInt("save-interval", 30);
+        compactInterval = Math.max(1, config.getInt("compact-interval", 600));
+        saveGenerations = Math.max(0, config.getInt("save-generations", 3));
+        saveTimeout = config.getLong("save-timeout", 10000);
+        loadWaitTimeout = Math.max(0, config.getLong("load-wait-timeout", 2000));
+        storageFormat = config.getString("storage-format", "yaml");
+        journalCompactSize = Math.max(1, config.getLong("journal-compact-size", 1024)) * 1024;
+        workingSet = config.getBoolean("working-set", false);
+        durabilityTable = config.getBoolean("durability-table", false);
+        workingSetCacheSize = Math.max(0, config.getInt("working-set-cache-size", 1024));
+        backupInterval = Math.max(0, config.getInt("backup-interval", 0));
+        backupFullEvery = Math.max(1, config.getInt("backup-full-every", 24));
+        backupMaxCount = Math.max(1, config.getInt("backup-max-count", 48));
+        backupMaxAge = Math.max(0, config.getLong("backup-max-age", 168)) * 3600 * 1000;
+
+        entityRatio = new int[EntityType.values().length];
+        Arrays.fill(entityRatio, 1);
+        final ConfigurationSection ratios = config.getConfigurationSection("entity-ratio");
+        if(ratios != null) {
+            for (String key : ratios.getKeys(false)) {
+                final EntityType type = parseType(key, "entity-ratio", logger);
+                if(type != null) entityRatio[type.ordinal()] = ratios.getInt(key, 1);
+            }
+        }
+
+        final EnumSet<EntityType> allowChange = EnumSet.noneOf(EntityType.class);
+        for (String key : config.getStringList("allow-change")) {
+            final EntityType type = parseType(key, "allow-change", logger);
+            if(type != null) allowChange.add(type);
+        }
+        this.allowChange = allowChange;
+    }
+
+    public static Settings load(ConfigurationSection config, Logger logger) {
+        return new Settings(config, logger);
+    }
+
+    private static EntityType parseType(String name, String path, Logger logger) {
+        try {
+            return EntityType.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.warning("Unknown entity type " + name + " in " + path);
+            return null;
+        }
+    }
+
+    public double getDropChance() {
+        return dropChance;
+    }
+
+    public int getDropFlags() {
+        return dropFlags;
+    }
+
+    public int getDurability() {
+        return durability;
+    }
+
+    /**
+     * Gets how much durability spawning an entity of the given type costs.
+     *
+     * @param type the spawned entity type
+     * @return the durability cost, 1 unless configured
+     */
+    public int getEntityRatio(EntityType type) {
+        return entityRatio[type.ordinal()];
+    }
+
+    public boolean isChangeAllowed(EntityType type) {
+        return allowChange.contains(type);
+    }
+
+    public int getHologramUpdateInterval() {
+        return hologramUpdateInterval;
+    }
+
+    public int getSaveInterval() {
+        return saveInterval;
+    }
+
+    /**
+     * Gets the interval full snapshots are written at, while changes are saved every save interval.
+     *
+     * @return the interval in seconds
+     */
+    public int getCompactInterval() {
+        return compactInterval;
+    }
+
+    /**
+     * Gets how many previous versions of the data file are kept, only read while the plugin loads.
+     *
+     * @return the number of versions
+     */
+    public int getSaveGenerations() {
+        return saveGenerations;
+    }
+
+    public long getSaveTimeout() {
+        return saveTimeout;
+    }
+
+    /**
+     * Gets how long the first spawner event may block the main thread while the data is still loading.
+     *
+     * @return the timeout in milliseconds
+     */
+    public long getLoadWaitTimeout() {
+        return loadWaitTimeout;
+    }
+
+    /**
+     * Gets the storage format, only read while the plugin loads.
+     *
+     * @return the format name, see {@link com.hyun.betterspawner.storage.SpawnerStorage#create}
+     */
+    public String getStorageFormat() {
+        return storageFormat;
+    }
+
+    /**
+     * Gets the journal size which triggers a snapshot even without structural changes.
+     *
+     * @return the size in bytes
+     */
+    public long getJournalCompactSize() {
+        return journalCompactSize;
+    }
+
+    /**
+     * Gets whether only the spawners of loaded chunks are kept in memory, only read while the plugin loads.
+     *
+     * @return true to use a {@link com.hyun.betterspawner.storage.SpawnerWorkingSet}
+     */
+    public boolean isWorkingSet() {
+        return workingSet;
+    }
+
+    /**
+     * Gets how many unloaded chunks keep their spawners cached in the working set.
+     *
+     * @return the number of chunks
+     */
+    public int getWorkingSetCacheSize() {
+        return workingSetCacheSize;
+    }
+
+    /**
+     * Gets whether durability changes are written into a memory-mapped counter table, only read while the plugin loads.
+     *
+     * @return true to use a {@link com.hyun.betterspawner.storage.DurabilityTable}
+     */
+    public boolean isDurabilityTable() {
+        return durabilityTable;
+    }
+
+    /**
+     * Gets how often the spawner data is backed up, only read while the plugin loads.
+     *
+     * @return the interval in minutes, 0 if backups are disabled
+     */
+    public int getBackupInterval() {
+        return backupInterval;
+    }
+
+    /**
+     * Gets every how many backups a full one is taken instead of an incremental one.
+     *
+     * @return the number of backups
+     */
+    public int getBackupFullEvery() {
+        return backupFullEvery;
+    }
+
+    public int getBackupMaxCount() {
+        return backupMaxCount;
+    }
+
+    /**
+     * Gets how old backups may get before they are deleted.
+     *
+     * @return the age in milliseconds, 0 to keep them regardless of age
+     */
+    public long getBackupMaxAge() {
+        return backupMaxAge;
+    }
+}
@@ -1,17 +1,20 @@
 package com.hyun.betterspawner.commands;
 
 import com.hyun.betterspawner.BetterSpawner;
+import com.hyun.betterspawner.storage.SpawnerBackups;
+import com.hyun.betterspawner.storage.SpawnerMigrator;
+import com.hyun.betterspawner.storage.SpawnerRecord;
+import com.hyun.betterspawner.storage.SpawnerStorage;
 import com.hyun.betterspawner.utils.ItemUtil;
 import com.hyun.betterspawner.utils.nbt.MojangsonParser;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
-import org.bukkit.configuration.ConfigurationSection;
-import org.bukkit.configuration.MemoryConfiguration;
 import org.bukkit.entity.EntityType;
 import org.bukkit.entity.Player;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -27,12 +30,98 @@ public class BSCommand implements CommandExecutor, TabCompleter {
     @Override
     public boolean onCommand(@Nonnull CommandSender sender, @Nonnull org.bukkit.command.Command command, @Nonnull String label, @Nonnull String[] args) {
         if (args.length == 1 && args[0].equals("reload")) {
-            plugin.reloadConfig();
+            plugin.reloadSettings();
             plugin.i18n.reload();
+            ItemUtil.invalidateCache();
             sender.sendMessage(plugin.i18n("message-reload"));
             return true;
         }
 
+        if ((args.length == 1 || args.length == 2) && args[0].equals("migrate")) {
+            if (args.length == 1 || args[1].equals("status")) {
+                sendMigrationStatus(sender);
+                return true;
+            }
+
+            final String format = args[1].toLowerCase();
+            try {
+                if (!format.equals("chunk")) SpawnerStorage.fileName(format);
+            } catch (IllegalArgumentException e) {
+                sender.sendMessage(plugin.i18n("message-migrate-unknown", Map.of("format", format)));
+                return true;
+            }
+            final String current = plugin.getSettings().getStorageFormat().toLowerCase();
+            if (format.equals(current) || format.equals("yml") && current.equals("yaml")) {
+                sender.sendMessage(plugin.i18n("message-migrate-same", Map.of("format", current)));
+                return true;
+            }
+            // 运行中的数据仍写入当前格式，下次启动时由 BetterSpawner 在后台迁移
+            plugin.getConfig().set("storage-format", format);
+            plugin.saveConfig();
+            sender.sendMessage(plugin.i18n("message-migrate-scheduled", Map.of("format", format)));
+            return true;
+        }
+
+        if (args.length >= 1 && args[0].equals("backup")) {
+            final SpawnerBackups backups = plugin.getBackups();
+            if (backups == null) {
+                sender.sendMessage(plugin.i18n("message-backup-disabled"));
+                return true;
+            }
+            if (args.length == 1 || args[1].equals("list")) {
+                final List<SpawnerBackups.Backup> list = backups.list();
+                if (list.isEmpty()) {
+                    sender.sendMessage(plugin.i18n("message-backup-none"));
+                    return true;
+                }
+                sender.sendMessage(plugin.i18n("message-backup-list", Map.of("count", String.valueOf(list.size()))));
+                for (SpawnerBackups.Backup backup : list) {
+                    final String size = String.valueOf((backup.file().length() + 1023) / 1024);
+                    sender.sendMessage(backup.isFull()
+                            ? plugin.i18n("message-backup-entry-full", Map.of("id", backup.id(), "size", size))
+                            : plugin.i18n("message-backup-entry", Map.of("id", backup.id(), "base", backup.base(), "size", size)));
+                }
+                return true;
+            }
+            if (args[1].equals("now")) {
+                final var future = plugin.backupSpawnerData();
+                if (future == null) {
+                    sender.sendMessage(plugin.i18n("message-backup-disabled"));
+                    return true;
+                }
+                sender.sendMessage(plugin.i18n("message-backup-started"));
+                // 备份在写入线程完成，回到主线程发送结果
+                future.whenComplete((backup, ex) -> {
+                    if (!plugin.isEnabled()) return;
+                    plugin.getServer().getScheduler().runTask(plugin, () -> {
+                        if (ex == null) {
+                            sender.sendMessage(plugin.i18n("message-backup-success", Map.of("id", backup.id())));
+                        } else {
+                            final Throwable cause = ex.getCause() == null ? ex : ex.getCause();
+                            sender.sendMessage(plugin.i18n("message-backup-failed", Map.of("error", String.valueOf(cause.getMessage()))));
+                        }
+                    });
+                });
+                return true;
+            }
+            if (args.length == 3 && args[1].equals("restore")) {
+                final SpawnerBackups.Backup backup = backups.find(args[2]);
+                if (backup == null) {
+                    sender.sendMessage(plugin.i18n("message-backup-not-found", Map.of("id", args[2])));
+                    return true;
+                }
+                try {
+                    backups.scheduleRestore(backup);
+                } catch (IOException e) {
+                    sender.sendMessage(plugin.i18n("message-backup-failed", Map.of("error", String.valueOf(e.getMessage()))));
+                    return true;
+                }
+                sender.sendMessage(plugin.i18n("message-backup-restore-scheduled", Map.of("id", backup.id())));
+                return true;
+            }
+            return false;
+        }
+
         if (args.length >= 2 && args[0].equals("give")) {
             Player p = plugin.getServer().getPlayer(args[1]);
             if (p == null) {
@@ -40,12 +129,12 @@ public class BSCommand implements CommandExecutor, TabCompleter {
                 return true;
             }
 
-            ConfigurationSection config = new MemoryConfiguration();
-
             EntityType type = EntityType.PIG;
             int amount = 1;
-            int durability = plugin.getConfig().getInt("durability");
+            int durability = plugin.getSettings().getDurability();
             int flags = 0;
+            String nbt = null;
+            String displayName = null;
 
             for (var i = 2; i < args.length - 1; i++) {
                 final var arg = args[++i];
@@ -59,7 +148,7 @@ public class BSCommand implements CommandExecutor, TabCompleter {
                                 sender.sendMessage(plugin.i18n("message-invalid-nbt", Map.of("error", e.getMessage())));
                                 return true;
                             }
-                            config.set("nbt", arg);
+                            nbt = arg;
                         } else {
                             try {
                                 type = EntityType.valueOf(arg.toUpperCase());
@@ -93,28 +182,57 @@ public class BSCommand implements CommandExecutor, TabCompleter {
                             return true;
                         }
                     }
-                    case "-n" -> config.set("displayName", org.bukkit.ChatColor.translateAlternateColorCodes('&', arg));
+                    case "-n" -> displayName = org.bukkit.ChatColor.translateAlternateColorCodes('&', arg);
                     default -> i -= 1;
                 }
             }
 
-            config.set("durability", durability);
-            config.set("flags", flags);
-            p.getInventory().addItem(ItemUtil.getSpawnerDropItem(plugin, type, config, amount));
+            final SpawnerRecord spawnerData = new SpawnerRecord(type, durability, durability, flags, displayName, nbt);
+            p.getInventory().addItem(ItemUtil.getSpawnerDropItem(plugin, type, spawnerData, amount));
             sender.sendMessage(plugin.i18n("message-give-success", Map.of("player", p.getDisplayName(),
                     "amount", String.valueOf(amount),
-                    "item", ItemUtil.getSpawnerDisplayName(plugin, config))));
+                    "item", ItemUtil.getSpawnerDisplayName(plugin, spawnerData))));
             return true;
         }
         return false;
     }
 
+    private void sendMigrationStatus(CommandSender sender) {
+        final SpawnerMigrator migration = plugin.getMigration();
+        if (migration == null) {
+            sender.sendMessage(plugin.i18n("message-migrate-none", Map.of("format", plugin.getSettings().getStorageFormat())));
+            return;
+        }
+        if (migration.getPhase() == SpawnerMigrator.Phase.FAILED) {
+            sender.sendMessage(plugin.i18n("message-migrate-failed", Map.of("source", migration.getSource().getFile().getName(),
+                    "error", String.valueOf(migration.getError()))));
+            return;
+        }
+        sender.sendMessage(plugin.i18n("message-migrate-status", Map.of("source", migration.getSource().getFile().getName(),
+                "target", migration.getTarget().getFile().getName(),
+                "phase", migration.getPhase().name().toLowerCase(),
+                "copied", String.valueOf(migration.getCopied()),
+                "verified", String.valueOf(migration.getVerified()),
+                "elapsed", String.valueOf(migration.getElapsed() / 1000))));
+    }
+
     @Override
     public List<String> onTabComplete(@Nonnull CommandSender sender, @Nonnull org.bukkit.command.Command command, @Nonnull String label, @Nonnull String[] args) {
         final List<String> completions = new ArrayList<>();
         if (args.length == 1) {
             completions.add("reload");
             completions.add("give");
+            completions.add("migrate");
+            completions.add("backup");
+        }
+        if (args.length == 2 && args[0].equals("backup")) {
+            completions.addAll(List.of("list", "now", "restore"));
+        }
+        if (args.length == 3 && args[0].equals("backup") && args[1].equals("restore") && plugin.getBackups() != null) {
+            plugin.getBackups().list().forEach(backup -> completions.add(backup.id()));
+        }
+        if (args.length == 2 && args[0].equals("migrate")) {
+            completions.addAll(List.of("status", "yaml", "nbt", "sqlite", "region", "chunk"));
         }
         if (args.length == 2 && args[0].equals("give")) {
             return null;
@@ -128,9 +246,9 @@ public class BSCommand implements CommandExecutor, TabCompleter {
                 case "-a" -> completions.add("1");
                 case "-d" -> {
                     completions.add("-1");
-                    completions.add(String.valueOf(plugin.getConfig().getInt("durability")));
+                    completions.add(String.valueOf(plugin.getSettings().getDurability()));
                 }
-                case "-f" -> completions.add(String.valueOf(plugin.getConfig().getInt("drop-flags")));
+                case "-f" -> completions.add(String.valueOf(plugin.getSettings().getDropFlags()));
                 case "-n" -> {}
                 default -> {
                     final ArrayList<String> options = new ArrayList<>();
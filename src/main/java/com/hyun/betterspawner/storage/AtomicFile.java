@@ -0,0 +1,358 @@
+package com.hyun.betterspawner.storage;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A file which is replaced atomically, with a CRC32 footer and previous generations kept as {@code .1} to {@code .N}.
+ */
+public class AtomicFile {
+    private static final String FOOTER = "#checksum crc32=";
+    private static final byte[] FOOTER_PREFIX = FOOTER.getBytes(StandardCharsets.US_ASCII);
+    private static final int FOOTER_SIZE = FOOTER_PREFIX.length + 9;
+
+    @FunctionalInterface
+    public interface Writer {
+        /**
+         * Writes the content, the stream must not be closed.
+         *
+         * @param out the stream
+         * @throws IOException if the content cannot be written
+         */
+        void write(OutputStream out) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface Reader<T> {
+        /**
+         * Parses the content.
+         *
+         * @param in the content without the footer
+         * @return the parsed value
+         * @throws IOException if the content is invalid
+         */
+        T read(InputStream in) throws IOException;
+    }
+
+    /**
+     * Thrown by a {@link Reader} which already passed part of the content on before failing.
+     * No older version is tried then, it would pass the same content on a second time.
+     */
+    public static class PartialReadException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public PartialReadException(Throwable cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
+    private enum State {
+        VALID, UNVERIFIED, DAMAGED
+    }
+
+    private final File file;
+    private final int generations;
+    private final Reader<?> edited;
+
+    /**
+     * @param file the file
+     * @param generations how many previous versions are kept
+     */
+    public AtomicFile(File file, int generations) {
+        this(file, generations, null);
+    }
+
+    /**
+     * @param file the file
+     * @param generations how many previous versions are kept
+     * @param edited for text which admins may edit by hand, checks that a current version which
+     *               fails its checksum is still complete, it is loaded then instead of an older one
+     */
+    public AtomicFile(File file, int generations, @Nullable Reader<?> edited) {
+        this.file = file;
+        this.generations = generations;
+        this.edited = edited;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Replaces the file with new content.
+     *
+     * @param writer writes the content
+     * @throws IOException if the content cannot be written, the current version is left untouched
+     */
+    public void write(Writer writer) throws IOException {
+        try (Output out = startWrite()) {
+            writer.write(new FilterOutputStream(out) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            });
+            out.commit();
+        }
+    }
+
+    /**
+     * Starts replacing the file with content written piece by piece, for writers which
+     * cannot produce everything from a single callback.
+     *
+     * @return the stream, the content replaces the file once {@link Output#commit()} is called
+     * @throws IOException if the temporary file cannot be created
+     */
+    public Output startWrite() throws IOException {
+        final File tmp = new File(file.getPath() + ".tmp");
+        final FileOutputStream fos = new FileOutputStream(tmp);
+        return new Output(tmp, fos, new BufferedOutputStream(fos, 1 << 16), new CRC32());
+    }
+
+    /**
+     * A write in progress. Closing it without committing discards the new content.
+     */
+    public class Output extends FilterOutputStream {
+        private final File tmp;
+        private final FileOutputStream fos;
+        private final BufferedOutputStream buffered;
+        private final CRC32 crc;
+        private boolean done;
+
+        private Output(File tmp, FileOutputStream fos, BufferedOutputStream buffered, CRC32 crc) {
+            super(new CheckedOutputStream(buffered, crc));
+            this.tmp = tmp;
+            this.fos = fos;
+            this.buffered = buffered;
+            this.crc = crc;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        /**
+         * Appends the checksum, forces the content to disk and moves it over the current version.
+         *
+         * @throws IOException if the content cannot be written, the current version is left untouched
+         */
+        public void commit() throws IOException {
+            if(done) throw new IllegalStateException("Already closed");
+            done = true;
+            try {
+                out.flush();
+                buffered.write(footer(crc.getValue()));
+                buffered.flush();
+                fos.getFD().sync();
+                fos.close();
+            } catch (IOException | RuntimeException e) {
+                discard();
+                throw e;
+            }
+
+            keepGeneration();
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            syncDirectory();
+        }
+
+        @Override
+        public void close() {
+            if(done) return;
+            done = true;
+            discard();
+        }
+
+        private void discard() {
+            try {
+                fos.close();
+                Files.deleteIfExists(tmp.toPath());
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Reads the newest version which passes its checksum and parses. Damaged versions are
+     * skipped with a warning and only tried if nothing else is left. A version which fails
+     * to parse falls back to the next one, unless the reader throws a {@link PartialReadException}.
+     *
+     * @param reader parses the content
+     * @param logger the logger to report fallbacks to
+     * @param <T> the parsed type
+     * @return the parsed value, or null if no version exists
+     * @throws IOException if no version could be parsed
+     */
+    public <T> @Nullable T read(Reader<T> reader, Logger logger) throws IOException {
+        final List<File> candidates = new ArrayList<>();
+        final List<File> damaged = new ArrayList<>();
+        for (int i = 0; i <= generations; i++) {
+            final File candidate = generation(i);
+            if(!candidate.isFile() || candidate.length() == 0) continue;
+            final State state = verify(candidate);
+            if(state == State.DAMAGED && i == 0 && isComplete(candidate)) {
+                // 手动编辑后未删除校验行，能完整解析就以编辑后的内容为准
+                logger.warning(candidate + " does not match its checksum, it was probably edited by hand and is loaded as it is");
+                candidates.add(candidate);
+            } else if(state == State.DAMAGED) {
+                logger.warning(candidate + " is damaged, its checksum does not match");
+                damaged.add(candidate);
+            } else {
+                candidates.add(candidate);
+            }
+        }
+        candidates.addAll(damaged);
+
+        IOException failure = null;
+        for (File candidate : candidates) {
+            try (InputStream in = open(candidate)) {
+                final T value = reader.read(in);
+                if(candidate != generation(0) || failure != null) {
+                    logger.warning("Loaded " + candidate + " instead, the newer versions could not be read");
+                }
+                return value;
+            } catch (PartialReadException e) {
+                throw e;
+            } catch (IOException | RuntimeException e) {
+                logger.warning("Could not read " + candidate + ": " + e.getMessage());
+                if(failure == null) failure = e instanceof IOException io ? io : new IOException(e);
+            }
+        }
+        if(failure != null) throw failure;
+        return null;
+    }
+
+    private boolean isComplete(File candidate) {
+        if(edited == null) return false;
+        try (InputStream in = open(candidate)) {
+            edited.read(in);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    private File generation(int i) {
+        return i == 0 ? file : new File(file.getPath() + "." + i);
+    }
+
+    // 移动旧版本，当前版本用硬链接保留，替换前文件始终存在
+    private void keepGeneration() throws IOException {
+        if(generations <= 0 || !file.isFile()) return;
+        Files.deleteIfExists(generation(generations).toPath());
+        for (int i = generations - 1; i >= 1; i--) {
+            final File from = generation(i);
+            if(from.exists()) Files.move(from.toPath(), generation(i + 1).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        try {
+            Files.createLink(generation(1).toPath(), file.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.move(file.toPath(), generation(1).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void syncDirectory() {
+        final File dir = file.getAbsoluteFile().getParentFile();
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+            // 部分平台不支持同步目录
+        }
+    }
+
+    private static byte[] footer(long crc) {
+        return (FOOTER + String.format("%08x", crc) + "\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static @Nullable Long readFooter(File candidate) throws IOException {
+        final long length = candidate.length();
+        if(length < FOOTER_SIZE) return null;
+        final byte[] footer = new byte[FOOTER_SIZE];
+        try (RandomAccessFile raf = new RandomAccessFile(candidate, "r")) {
+            raf.seek(length - FOOTER_SIZE);
+            raf.readFully(footer);
+        }
+        for (int i = 0; i < FOOTER_PREFIX.length; i++) {
+            if(footer[i] != FOOTER_PREFIX[i]) return null;
+        }
+        if(footer[FOOTER_SIZE - 1] != '\n') return null;
+        try {
+            return Long.parseLong(new String(footer, FOOTER_PREFIX.length, 8, StandardCharsets.US_ASCII), 16);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static State verify(File candidate) {
+        if(candidate.length() == 0) return State.DAMAGED;
+        try {
+            final Long expected = readFooter(candidate);
+            if(expected == null) return State.UNVERIFIED;
+
+            final CRC32 crc = new CRC32();
+            final byte[] buffer = new byte[1 << 16];
+            long remaining = candidate.length() - FOOTER_SIZE;
+            try (InputStream in = new FileInputStream(candidate)) {
+                while (remaining > 0) {
+                    final int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if(read < 0) return State.DAMAGED;
+                    crc.update(buffer, 0, read);
+                    remaining -= read;
+                }
+            }
+            return crc.getValue() == expected ? State.VALID : State.DAMAGED;
+        } catch (IOException e) {
+            return State.DAMAGED;
+        }
+    }
+
+    // 返回不含校验行的内容
+    private static InputStream open(File candidate) throws IOException {
+        final long length = readFooter(candidate) == null ? candidate.length() : candidate.length() - FOOTER_SIZE;
+        final InputStream in = new BufferedInputStream(new FileInputStream(candidate), 1 << 16);
+        return new FilterInputStream(in) {
+            private long remaining = length;
+
+            @Override
+            public int read() throws IOException {
+                if(remaining <= 0) return -1;
+                final int b = super.read();
+                if(b >= 0) remaining--;
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if(remaining <= 0) return -1;
+                final int read = super.read(b, off, (int) Math.min(len, remaining));
+                if(read > 0) remaining -= read;
+                return read;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                final long skipped = super.skip(Math.min(n, remaining));
+                remaining -= skipped;
+                return skipped;
+            }
+
+            @Override
+            public int available() throws IOException {
+                return (int) Math.min(super.available(), remaining);
+            }
+        };
+    }
+}
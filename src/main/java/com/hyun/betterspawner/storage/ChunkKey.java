@@ -0,0 +1,35 @@
+package com.hyun.betterspawner.storage;
+
+import com.hyun.betterspawner.utils.BlockPos;
+
+import java.util.UUID;
+
+/**
+ * Identifies a chunk of a world.
+ *
+ * @param world the world uid
+ * @param x the chunk x, block x {@code >> 4}
+ * @param z the chunk z, block z {@code >> 4}
+ */
+public record ChunkKey(UUID world, int x, int z) {
+
+    /**
+     * Gets the chunk a packed block position lies in.
+     *
+     * @param world the world uid
+     * @param pos the packed position
+     * @return the chunk
+     */
+    public static ChunkKey of(UUID world, long pos) {
+        return new ChunkKey(world, BlockPos.getX(pos) >> 4, BlockPos.getZ(pos) >> 4);
+    }
+
+    /**
+     * Gets the packed key of this chunk inside its world, see {@link BlockPos#chunkKey(int, int)}.
+     *
+     * @return the packed key
+     */
+    public long key() {
+        return BlockPos.chunkKey(x, z);
+    }
+}
@@ -0,0 +1,21 @@
+package com.hyun.betterspawner.storage;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * A storage which can read single chunks, allowing to keep only the records of loaded chunks in memory.
+ */
+public interface ChunkLoadingStorage extends SpawnerStorage {
+
+    /**
+     * Reads the records of a single chunk, as of the last completed save.
+     *
+     * @param chunk the chunk
+     * @param logger the logger to report skipped records to
+     * @return the records with their locations, owned by the caller
+     * @throws IOException if the data exists but cannot be read
+     */
+    List<SpawnerRecord> loadChunk(ChunkKey chunk, Logger logger) throws IOException;
+}
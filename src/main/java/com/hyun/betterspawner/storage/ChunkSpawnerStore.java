@@ -0,0 +1,233 @@
+package com.hyun.betterspawner.storage;
+
+import com.hyun.betterspawner.utils.BlockPos;
+import com.hyun.betterspawner.utils.LongObjectMap;
+import org.bukkit.Chunk;
+import org.bukkit.NamespacedKey;
+import org.bukkit.World;
+import org.bukkit.entity.EntityType;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldSaveEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataType;
+import org.bukkit.plugin.Plugin;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.logging.Level;
+
+/**
+ * Keeps spawner records in the {@link PersistentDataContainer} of the chunk they are in.
+ */
+public class ChunkSpawnerStore implements SpawnerRegistry.Observer, org.bukkit.event.Listener {
+    private static final byte VERSION = 1;
+
+    private final Plugin plugin;
+    private final SpawnerRegistry registry;
+    private final NamespacedKey key;
+    private final Map<UUID, LongObjectMap<Boolean>> dirty = new HashMap<>();
+
+    public ChunkSpawnerStore(Plugin plugin, SpawnerRegistry registry) {
+        this.plugin = plugin;
+        this.registry = registry;
+        this.key = new NamespacedKey(plugin, "spawners");
+    }
+
+    /**
+     * Loads the spawners of every chunk of a world which is already loaded.
+     *
+     * @param world the world
+     */
+    public void scan(World world) {
+        for (Chunk chunk : world.getLoadedChunks()) {
+            load(chunk);
+        }
+    }
+
+    /**
+     * Writes every dirty chunk back to its container.
+     */
+    public void flush() {
+        for (World world : plugin.getServer().getWorlds()) {
+            flush(world);
+        }
+    }
+
+    private void flush(World world) {
+        final LongObjectMap<Boolean> chunks = dirty.remove(world.getUID());
+        if(chunks == null) return;
+        chunks.forEach((chunkKey, ignored) -> {
+            final int chunkX = (int) (chunkKey >> 32);
+            final int chunkZ = (int) chunkKey;
+            if(world.isChunkLoaded(chunkX, chunkZ)) save(world.getChunkAt(chunkX, chunkZ));
+        });
+    }
+
+    /**
+     * Moves records from another registry into the containers of their chunks, loading
+     * those chunks as needed. Records already stored in a chunk take precedence.
+     *
+     * @param source the records to import
+     * @return the number of records which could not be imported because their world is not loaded
+     */
+    public int importRecords(SpawnerRegistry source) {
+        int skipped = 0;
+        final Map<UUID, List<SpawnerRecord>> byWorld = new HashMap<>();
+        for (SpawnerRecord record : source.snapshot().records()) {
+            byWorld.computeIfAbsent(record.getWorld(), k -> new ArrayList<>()).add(record);
+        }
+        for (Map.Entry<UUID, List<SpawnerRecord>> entry : byWorld.entrySet()) {
+            final World world = plugin.getServer().getWorld(entry.getKey());
+            if(world == null) {
+                skipped += entry.getValue().size();
+                continue;
+            }
+            for (SpawnerRecord record : entry.getValue()) {
+                final long pos = record.getPos();
+                // 加载区块时会触发 ChunkLoadEvent 读入已有数据
+                world.getChunkAt(BlockPos.getX(pos) >> 4, BlockPos.getZ(pos) >> 4);
+                if(registry.get(entry.getKey(), pos) == null) {
+                    registry.put(entry.getKey(), pos, record);
+                }
+            }
+            flush(world);
+        }
+        return skipped;
+    }
+
+    @Override
+    public void onPut(SpawnerRecord record) {
+        markDirty(record.getWorld(), record.getPos());
+    }
+
+    @Override
+    public void onRemove(UUID world, long pos) {
+        markDirty(world, pos);
+    }
+
+    @Override
+    public void onChange(SpawnerRecord record) {
+        markDirty(record.getWorld(), record.getPos());
+    }
+
+    private void markDirty(UUID world, long pos) {
+        dirty.computeIfAbsent(world, k -> new LongObjectMap<>()).put(BlockPos.chunkKeyOf(pos), Boolean.TRUE);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent e) {
+        load(e.getChunk());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent e) {
+        final Chunk chunk = e.getChunk();
+        final UUID world = chunk.getWorld().getUID();
+        final LongObjectMap<Boolean> chunks = dirty.get(world);
+        if(chunks != null && chunks.remove(BlockPos.chunkKey(chunk.getX(), chunk.getZ())) != null) {
+            save(chunk);
+        }
+
+        registry.evict(world, chunk.getX(), chunk.getZ());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldSave(WorldSaveEvent e) {
+        flush(e.getWorld());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldUnload(WorldUnloadEvent e) {
+        flush(e.getWorld());
+    }
+
+    private void load(Chunk chunk) {
+        final byte[] data = chunk.getPersistentDataContainer().get(key, PersistentDataType.BYTE_ARRAY);
+        if(data == null) return;
+
+        final UUID world = chunk.getWorld().getUID();
+        final int baseX = chunk.getX() << 4;
+        final int baseZ = chunk.getZ() << 4;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if(in.readByte() != VERSION) {
+                plugin.getLogger().warning("Skipping spawners of chunk " + chunk + " written by a newer version");
+                return;
+            }
+            final int count = in.readUnsignedShort();
+            for (int i = 0; i < count; i++) {
+                final int xz = in.readUnsignedByte();
+                final int y = in.readShort();
+                final EntityType type = parseType(readString(in));
+                final int durability = in.readInt();
+                final int maxDurability = in.readInt();
+                final int flags = in.readInt();
+                final SpawnerRecord record = new SpawnerRecord(type, durability, maxDurability, flags, readString(in), readString(in));
+                registry.load(world, BlockPos.asLong(baseX | xz >> 4, y, baseZ | xz & 15), record);
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not read the spawners of chunk " + chunk, e);
+        }
+    }
+
+    private void save(Chunk chunk) {
+        final List<SpawnerRecord> records = registry.getChunk(chunk.getWorld().getUID(), chunk.getX(), chunk.getZ());
+        final PersistentDataContainer container = chunk.getPersistentDataContainer();
+        if(records.isEmpty()) {
+            container.remove(key);
+            return;
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 * records.size());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeShort(records.size());
+            for (SpawnerRecord record : records) {
+                final long pos = record.getPos();
+                out.writeByte((BlockPos.getX(pos) & 15) << 4 | BlockPos.getZ(pos) & 15);
+                out.writeShort(BlockPos.getY(pos));
+                writeString(out, record.getType() == null ? null : record.getType().name());
+                out.writeInt(record.getDurability());
+                out.writeInt(record.getMaxDurability());
+                out.writeInt(record.getFlags());
+                writeString(out, record.getDisplayName());
+                writeString(out, record.getNbt());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        container.set(key, PersistentDataType.BYTE_ARRAY, bytes.toByteArray());
+    }
+
+    private static void writeString(DataOutputStream out, @Nullable String value) throws IOException {
+        if(value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static @Nullable String readString(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if(length < 0) return null;
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static @Nullable EntityType parseType(@Nullable String name) {
+        if(name == null) return null;
+        try {
+            return EntityType.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
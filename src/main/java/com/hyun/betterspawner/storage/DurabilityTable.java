@@ -0,0 +1,218 @@
+package com.hyun.betterspawner.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Memory-mapped table of the durability counters of registered spawners.
+ */
+public class DurabilityTable {
+    private static final int MAGIC = 0x42534454; // "BSDT"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    // [int state][int durability][int maxDurability][int flags][long worldMost][long worldLeast][long pos]
+    private static final int SLOT_SIZE = 40;
+    private static final int STATE = 0;
+    private static final int DURABILITY = 4;
+    private static final int MAX_DURABILITY = 8;
+    private static final int FLAGS = 12;
+    private static final int WORLD_MOST = 16;
+    private static final int WORLD_LEAST = 24;
+    private static final int POS = 32;
+
+    private static final int FREE = 0;
+    private static final int LIVE = 1;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final File file;
+    private final FileChannel channel;
+    // 写入线程调用 force 时可能正在扩容
+    private volatile MappedByteBuffer buffer;
+    private int capacity;
+    // 空闲槽位栈，以及从未使用过的最小槽位
+    private int[] free = new int[64];
+    private int freeCount;
+    private int next;
+
+    private DurabilityTable(File file, FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+    }
+
+    /**
+     * Opens or creates a table.
+     *
+     * @param file the table file
+     * @return the table
+     * @throws IOException if the file cannot be mapped
+     */
+    public static DurabilityTable open(File file) throws IOException {
+        final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final DurabilityTable table = new DurabilityTable(file, channel);
+        try {
+            final long size = channel.size();
+            final int slots = (int) Math.max(0, (size - HEADER_SIZE) / SLOT_SIZE);
+            table.map(Math.max(INITIAL_CAPACITY, slots));
+            if(size < HEADER_SIZE || table.buffer.getInt(0) != MAGIC || table.buffer.getInt(4) != VERSION) {
+                table.clear();
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return table;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Checks whether any slot was handed out since the table was last cleared.
+     *
+     * @return true if the table may hold counters newer than the snapshot
+     */
+    public boolean isEmpty() {
+        return buffer.getInt(8) == 0;
+    }
+
+    /**
+     * Applies the counters of every live slot to the matching record. A slot only applies
+     * if the record still has the same max durability and flags, otherwise it belonged to
+     * a spawner which was replaced since.
+     *
+     * @param registry the registry loaded from the snapshot and journal
+     * @param logger the logger
+     * @return the number of live slots
+     */
+    public int restore(SpawnerRegistry registry, Logger logger) {
+        int live = 0;
+        int skipped = 0;
+        final int used = buffer.getInt(8);
+        for (int slot = 0; slot < used && slot < capacity; slot++) {
+            final int offset = offset(slot);
+            if(buffer.getInt(offset + STATE) != LIVE) continue;
+            live++;
+            final UUID world = new UUID(buffer.getLong(offset + WORLD_MOST), buffer.getLong(offset + WORLD_LEAST));
+            final SpawnerRecord record = registry.get(world, buffer.getLong(offset + POS));
+            if(record == null
+                    || record.getMaxDurability() != buffer.getInt(offset + MAX_DURABILITY)
+                    || record.getFlags() != buffer.getInt(offset + FLAGS)) {
+                skipped++;
+                continue;
+            }
+            record.setDurability(buffer.getInt(offset + DURABILITY));
+        }
+        if(skipped > 0) {
+            logger.warning("Skipped " + skipped + " stale entries in " + file.getName());
+        }
+        return live;
+    }
+
+    /**
+     * Frees every slot.
+     */
+    public void clear() {
+        freeCount = 0;
+        next = 0;
+        for (int i = 0; i < capacity * SLOT_SIZE; i += SLOT_SIZE) {
+            buffer.putInt(HEADER_SIZE + i + STATE, FREE);
+        }
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, 0);
+    }
+
+    /**
+     * Gives a registered record a slot and writes its counters.
+     *
+     * @param record the record, must not own a slot
+     */
+    void assign(SpawnerRecord record) {
+        final int slot;
+        if(freeCount > 0) {
+            slot = free[--freeCount];
+        } else {
+            slot = next++;
+            if(slot >= capacity) grow();
+            buffer.putInt(8, next);
+        }
+        record.setSlot(slot);
+
+        final int offset = offset(slot);
+        final UUID world = record.getWorld();
+        buffer.putLong(offset + WORLD_MOST, world.getMostSignificantBits());
+        buffer.putLong(offset + WORLD_LEAST, world.getLeastSignificantBits());
+        buffer.putLong(offset + POS, record.getPos());
+        buffer.putInt(offset + DURABILITY, record.getDurability());
+        buffer.putInt(offset + MAX_DURABILITY, record.getMaxDurability());
+        buffer.putInt(offset + FLAGS, record.getFlags());
+        // 状态最后写入，槽位内容完整后才算有效
+        buffer.putInt(offset + STATE, LIVE);
+    }
+
+    /**
+     * Writes the current durability of a record into its slot.
+     *
+     * @param record the record
+     */
+    void write(SpawnerRecord record) {
+        final int slot = record.getSlot();
+        if(slot < 0) return;
+        buffer.putInt(offset(slot) + DURABILITY, record.getDurability());
+    }
+
+    /**
+     * Releases the slot of a record which is no longer registered.
+     *
+     * @param record the record
+     */
+    void release(SpawnerRecord record) {
+        final int slot = record.getSlot();
+        if(slot < 0) return;
+        record.setSlot(-1);
+        buffer.putInt(offset(slot) + STATE, FREE);
+        if(freeCount == free.length) free = Arrays.copyOf(free, free.length * 2);
+        free[freeCount++] = slot;
+    }
+
+    /**
+     * Forces the mapped pages to disk, safe to call from the writer thread.
+     */
+    public void force() {
+        buffer.force();
+    }
+
+    public void close() {
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private void grow() {
+        try {
+            map(capacity * 2);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not grow " + file, e);
+        }
+    }
+
+    // 重新映射会扩展文件，旧的映射由 GC 回收
+    private void map(int slots) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) slots * SLOT_SIZE);
+        capacity = slots;
+    }
+}
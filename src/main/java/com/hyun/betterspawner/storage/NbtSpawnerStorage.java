@@ -0,0 +1,284 @@
+package com.hyun.betterspawner.storage;
+
+import com.hyun.betterspawner.utils.BlockPos;
+import com.hyun.betterspawner.utils.NBTUtil;
+import com.hyun.betterspawner.utils.nbt.NBTTagBase;
+import com.hyun.betterspawner.utils.nbt.NBTTagByteArray;
+import com.hyun.betterspawner.utils.nbt.NBTTagCompound;
+import com.hyun.betterspawner.utils.nbt.NBTTagString;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.EntityType;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Stores the registry as a columnar, GZIP compressed NBT compound in {@code spawnerData.dat}.
+ */
+public class NbtSpawnerStorage implements SpawnerStorage {
+    // 2: 显示名、NBT 和旧版世界的 YAML 改存 UTF-8 字节数组，NBT 字符串受 writeUTF 的 64K 限制
+    private static final int VERSION = 2;
+
+    private final File file;
+    private final AtomicFile data;
+
+    public NbtSpawnerStorage(File file) {
+        this(file, 0);
+    }
+
+    /**
+     * @param file the data file
+     * @param generations how many previous versions are kept, see {@link AtomicFile}
+     */
+    public NbtSpawnerStorage(File file, int generations) {
+        this.file = file;
+        this.data = new AtomicFile(file, generations);
+    }
+
+    @Override
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public SpawnerRegistry load(Logger logger) throws IOException {
+        final SpawnerRegistry registry = new SpawnerRegistry();
+        read(registry.sink(), logger);
+        return registry;
+    }
+
+    // 复合标签完整解析之后才逐条交给 sink，回退到旧版本时不会重复输出
+    @Override
+    public void read(Sink sink, Logger logger) throws IOException {
+        final NBTTagCompound root = data.read(NBTUtil::readCompressedNBTFromStream, logger);
+        if(root == null) return;
+        if(root.getInt("version") > VERSION) {
+            throw new IOException(file + " was written by a newer version");
+        }
+
+        final String[] worldTable = readTable(root, "worlds");
+        final String[] typeTable = readTable(root, "types");
+        final String[] stringTable = readTable(root, "strings");
+
+        final UUID[] worlds = new UUID[worldTable.length];
+        for (int i = 0; i < worlds.length; i++) {
+            worlds[i] = UUID.fromString(worldTable[i]);
+        }
+        final EntityType[] types = new EntityType[typeTable.length];
+        for (int i = 0; i < types.length; i++) {
+            try {
+                types[i] = EntityType.valueOf(typeTable[i]);
+            } catch (IllegalArgumentException e) {
+                logger.warning("Unknown entity type " + typeTable[i] + " in " + file);
+            }
+        }
+
+        final int[] world = root.getIntArray("world");
+        final int[] x = root.getIntArray("x");
+        final int[] y = root.getIntArray("y");
+        final int[] z = root.getIntArray("z");
+        final int[] type = root.getIntArray("type");
+        final int[] durability = root.getIntArray("durability");
+        final int[] maxDurability = root.getIntArray("maxDurability");
+        final int[] flags = root.getIntArray("flags");
+        final int[] displayName = root.getIntArray("displayName");
+        final int[] nbt = root.getIntArray("nbt");
+
+        for (int i = 0; i < world.length; i++) {
+            final SpawnerRecord record = new SpawnerRecord(lookup(types, type[i]),
+                    durability[i],
+                    maxDurability[i],
+                    flags[i],
+                    lookup(stringTable, displayName[i]),
+                    lookup(stringTable, nbt[i]));
+            sink.accept(worlds[world[i]], BlockPos.asLong(x[i], y[i], z[i]), record);
+        }
+
+        if(root.hasKey("legacy")) {
+            final NBTTagCompound legacy = (NBTTagCompound) root.get("legacy");
+            for (Map.Entry<String, NBTTagBase> entry : legacy.getContents().entrySet()) {
+                final YamlConfiguration section = new YamlConfiguration();
+                try {
+                    section.loadFromString(text(entry.getValue()));
+                } catch (InvalidConfigurationException e) {
+                    logger.warning("Dropping unreadable legacy world " + entry.getKey() + " in " + file);
+                    continue;
+                }
+                sink.acceptUnresolved(entry.getKey(), section);
+            }
+        }
+    }
+
+    @Override
+    public void save(SpawnerRegistry.Snapshot snapshot) throws IOException {
+        final Columns columns = new Columns(snapshot.records().size());
+        for (SpawnerRecord record : snapshot.records()) {
+            columns.add(record.getWorld(), record.getPos(), record);
+        }
+        snapshot.unresolved().forEach(columns::addUnresolved);
+        write(columns.toCompound());
+    }
+
+    // 列式布局要收集完所有记录才能写出，但每条记录只占几个 int，字符串在表中只存一份
+    @Override
+    public BulkWriter openWriter() {
+        final Columns columns = new Columns(1024);
+        return new BulkWriter() {
+            @Override
+            public void accept(UUID world, long pos, SpawnerRecord record) {
+                columns.add(world, pos, record);
+            }
+
+            @Override
+            public void acceptUnresolved(String name, ConfigurationSection section) {
+                columns.addUnresolved(name, section.getValues(true));
+            }
+
+            @Override
+            public void commit() throws IOException {
+                write(columns.toCompound());
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private void write(NBTTagCompound root) throws IOException {
+        try {
+            data.write(out -> NBTUtil.writeCompressedNBTToStream(out, root));
+        } catch (RuntimeException e) {
+            throw new IOException("Could not write " + file, e);
+        }
+    }
+
+    private static String[] readTable(NBTTagCompound root, String key) {
+        final List<NBTTagBase> tags = root.getList(key);
+        final String[] table = new String[tags.size()];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = text(tags.get(i));
+        }
+        return table;
+    }
+
+    // 版本 1 的文件中是字符串
+    private static String text(NBTTagBase tag) {
+        if(tag instanceof NBTTagByteArray bytes) return new String(bytes.getValue(), StandardCharsets.UTF_8);
+        return ((NBTTagString) tag).getValue();
+    }
+
+    private static <T> @Nullable T lookup(T[] table, int index) {
+        return index < 0 ? null : table[index];
+    }
+
+    private static class Columns {
+        private final StringTable worlds = new StringTable(false);
+        private final StringTable types = new StringTable(false);
+        private final StringTable strings = new StringTable(true);
+        private int size;
+        private int[] world;
+        private int[] x;
+        private int[] y;
+        private int[] z;
+        private int[] type;
+        private int[] durability;
+        private int[] maxDurability;
+        private int[] flags;
+        private int[] displayName;
+        private int[] nbt;
+        private NBTTagCompound legacy;
+
+        Columns(int capacity) {
+            resize(Math.max(capacity, 16));
+        }
+
+        void add(UUID world, long pos, SpawnerRecord record) {
+            if(size == this.world.length) resize(size * 2);
+            this.world[size] = worlds.indexOf(world.toString());
+            x[size] = BlockPos.getX(pos);
+            y[size] = BlockPos.getY(pos);
+            z[size] = BlockPos.getZ(pos);
+            type[size] = types.indexOf(record.getType() == null ? null : record.getType().name());
+            durability[size] = record.getDurability();
+            maxDurability[size] = record.getMaxDurability();
+            flags[size] = record.getFlags();
+            displayName[size] = strings.indexOf(record.getDisplayName());
+            nbt[size] = strings.indexOf(record.getNbt());
+            size++;
+        }
+
+        // 旧版世界的原始数据以 YAML 文本保存，保证切换格式时不会丢失
+        void addUnresolved(String name, Map<String, Object> values) {
+            if(legacy == null) legacy = new NBTTagCompound();
+            final YamlConfiguration section = new YamlConfiguration();
+            values.forEach((path, value) -> {
+                if(!(value instanceof ConfigurationSection)) section.set(path, value);
+            });
+            legacy.setByteArray(name, section.saveToString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        NBTTagCompound toCompound() {
+            resize(size);
+            final NBTTagCompound root = new NBTTagCompound();
+            root.setInt("version", VERSION);
+            root.setList("worlds", worlds.toTags());
+            root.setList("types", types.toTags());
+            root.setList("strings", strings.toTags());
+            root.setIntArray("world", world);
+            root.setIntArray("x", x);
+            root.setIntArray("y", y);
+            root.setIntArray("z", z);
+            root.setIntArray("type", type);
+            root.setIntArray("durability", durability);
+            root.setIntArray("maxDurability", maxDurability);
+            root.setIntArray("flags", flags);
+            root.setIntArray("displayName", displayName);
+            root.setIntArray("nbt", nbt);
+            if(legacy != null) root.set("legacy", legacy);
+            return root;
+        }
+
+        private void resize(int capacity) {
+            if(world != null && world.length == capacity) return;
+            world = world == null ? new int[capacity] : Arrays.copyOf(world, capacity);
+            x = x == null ? new int[capacity] : Arrays.copyOf(x, capacity);
+            y = y == null ? new int[capacity] : Arrays.copyOf(y, capacity);
+            z = z == null ? new int[capacity] : Arrays.copyOf(z, capacity);
+            type = type == null ? new int[capacity] : Arrays.copyOf(type, capacity);
+            durability = durability == null ? new int[capacity] : Arrays.copyOf(durability, capacity);
+            maxDurability = maxDurability == null ? new int[capacity] : Arrays.copyOf(maxDurability, capacity);
+            flags = flags == null ? new int[capacity] : Arrays.copyOf(flags, capacity);
+            displayName = displayName == null ? new int[capacity] : Arrays.copyOf(displayName, capacity);
+            nbt = nbt == null ? new int[capacity] : Arrays.copyOf(nbt, capacity);
+        }
+    }
+
+    private static class StringTable {
+        private final Map<String, Integer> indices = new HashMap<>();
+        private final List<NBTTagBase> tags = new ArrayList<>();
+        // 长度不受限制的值存为字节数组
+        private final boolean bytes;
+
+        StringTable(boolean bytes) {
+            this.bytes = bytes;
+        }
+
+        int indexOf(@Nullable String value) {
+            if(value == null) return -1;
+            return indices.computeIfAbsent(value, k -> {
+                tags.add(bytes ? new NBTTagByteArray(k.getBytes(StandardCharsets.UTF_8)) : new NBTTagString(k));
+                return tags.size() - 1;
+            });
+        }
+
+        List<NBTTagBase> toTags() {
+            return tags;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.hyun.betterspawner.storage;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Order independent sum of the CRC32 of records including their location.
+ */
+final class RecordChecksum {
+    private final CRC32 crc = new CRC32();
+    private final byte[] buffer = new byte[8];
+
+    long of(UUID world, long pos, SpawnerRecord record) {
+        crc.reset();
+        update(world.getMostSignificantBits());
+        update(world.getLeastSignificantBits());
+        update(pos);
+        update(record.getType() == null ? null : record.getType().name());
+        update(record.getDurability());
+        update(record.getMaxDurability());
+        update(record.getFlags());
+        update(record.getDisplayName());
+        update(record.getNbt());
+        return crc.getValue();
+    }
+
+    private void update(long value) {
+        for (int i = 0; i < 8; i++) {
+            buffer[i] = (byte) (value >>> (56 - i * 8));
+        }
+        crc.update(buffer, 0, 8);
+    }
+
+    // null 与空字符串需要区分
+    private void update(@Nullable String value) {
+        if(value == null) {
+            crc.update(0);
+            return;
+        }
+        crc.update(1);
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        update(bytes.length);
+        crc.update(bytes);
+    }
+}
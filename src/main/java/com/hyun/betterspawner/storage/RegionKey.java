@@ -0,0 +1,36 @@
+package com.hyun.betterspawner.storage;
+
+import com.hyun.betterspawner.utils.BlockPos;
+
+import java.util.UUID;
+
+/**
+ * Identifies a region of a world, 32x32 chunks like vanilla region files.
+ *
+ * @param world the world uid
+ * @param x the region x, block x {@code >> 9}
+ * @param z the region z, block z {@code >> 9}
+ */
+public record RegionKey(UUID world, int x, int z) {
+
+    /**
+     * Gets the region a packed block position lies in.
+     *
+     * @param world the world uid
+     * @param pos the packed position
+     * @return the region
+     */
+    public static RegionKey of(UUID world, long pos) {
+        return new RegionKey(world, BlockPos.getX(pos) >> 9, BlockPos.getZ(pos) >> 9);
+    }
+
+    /**
+     * Gets the region a chunk lies in.
+     *
+     * @param chunk the chunk
+     * @return the region
+     */
+    public static RegionKey of(ChunkKey chunk) {
+        return new RegionKey(chunk.world(), chunk.x() >> 5, chunk.z() >> 5);
+    }
+}
@@ -0,0 +1,304 @@
+package com.hyun.betterspawner.storage;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Stores the registry sharded by region in {@code spawnerData/<world uid>/r.<x>.<z>.dat}, like vanilla region files.
+ */
+public class RegionSpawnerStorage implements ChunkLoadingStorage {
+    private static final String LEGACY_FILE = "legacy.yml";
+    private static final int SHARD_CACHE_SIZE = 16;
+    private static final int FLUSH_SIZE = 65536;
+    private static final int LOCK_STRIPES = 64;
+    private static final int IO_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    @FunctionalInterface
+    private interface ShardTask<T, R> {
+        R run(T item) throws IOException;
+    }
+
+    private final File folder;
+    // 区块读取线程与写入线程都会访问，需要同步
+    private final Map<RegionKey, List<SpawnerRecord>> shardCache = new LinkedHashMap<>(32, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<RegionKey, List<SpawnerRecord>> eldest) {
+            return size() > SHARD_CACHE_SIZE;
+        }
+    };
+    // 同一区域的读取和保存互斥，否则读取线程可能把旧分片放回缓存，覆盖刚保存的记录
+    private final Object[] regionLocks = new Object[LOCK_STRIPES];
+    // 分片读写使用自己的线程，不占用服务器共享的 ForkJoinPool，首次使用时创建
+    private ExecutorService io;
+
+    public RegionSpawnerStorage(File folder) {
+        this.folder = folder;
+        for (int i = 0; i < regionLocks.length; i++) {
+            regionLocks[i] = new Object();
+        }
+    }
+
+    private Object lock(RegionKey region) {
+        return regionLocks[Math.floorMod(region.hashCode(), regionLocks.length)];
+    }
+
+    @Override
+    public File getFile() {
+        return folder;
+    }
+
+    @Override
+    public boolean hasData() {
+        return folder.isDirectory();
+    }
+
+    @Override
+    public boolean supportsPartialSnapshots() {
+        return true;
+    }
+
+    @Override
+    public List<SpawnerRecord> loadChunk(ChunkKey chunk, Logger logger) throws IOException {
+        final List<SpawnerRecord> shard = readShard(RegionKey.of(chunk), logger);
+        final List<SpawnerRecord> records = new ArrayList<>();
+        for (SpawnerRecord record : shard) {
+            if(ChunkKey.of(record.getWorld(), record.getPos()).equals(chunk)) records.add(record.copy());
+        }
+        return records;
+    }
+
+    // 返回的列表只读，内部记录不可修改
+    private List<SpawnerRecord> readShard(RegionKey region, Logger logger) throws IOException {
+        synchronized (lock(region)) {
+            synchronized (shardCache) {
+                final List<SpawnerRecord> cached = shardCache.get(region);
+                if(cached != null) return cached;
+            }
+            final File file = getShard(region);
+            final List<SpawnerRecord> records = file.isFile() ? new NbtSpawnerStorage(file).load(logger).snapshot().records() : List.of();
+            synchronized (shardCache) {
+                shardCache.put(region, records);
+            }
+            return records;
+        }
+    }
+
+    // 并行处理各分片，按输入顺序返回结果
+    private <T, R> List<R> parallel(Collection<T> items, ShardTask<T, R> task) throws IOException {
+        final ExecutorService executor;
+        synchronized (this) {
+            if(io == null) {
+                io = Executors.newFixedThreadPool(IO_THREADS, r -> {
+                    final Thread thread = new Thread(r, "BetterSpawner-Region");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            executor = io;
+        }
+        final List<Future<R>> futures = new ArrayList<>(items.size());
+        for (T item : items) {
+            futures.add(executor.submit(() -> task.run(item)));
+        }
+        final List<R> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while accessing " + folder, e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(false));
+            if(e.getCause() instanceof IOException cause) throw cause;
+            if(e.getCause() instanceof RuntimeException cause) throw cause;
+            throw new IOException(e.getCause());
+        }
+        return results;
+    }
+
+    @Override
+    public synchronized void close() {
+        if(io != null) io.shutdown();
+        io = null;
+    }
+
+    private File getShard(RegionKey region) {
+        return new File(new File(folder, region.world().toString()), "r." + region.x() + "." + region.z() + ".dat");
+    }
+
+    private List<File> listShards() {
+        final List<File> shards = new ArrayList<>();
+        final File[] worlds = folder.listFiles(File::isDirectory);
+        if(worlds == null) return shards;
+        for (File world : worlds) {
+            final File[] files = world.listFiles((dir, name) -> name.startsWith("r.") && name.endsWith(".dat"));
+            if(files != null) shards.addAll(Arrays.asList(files));
+        }
+        return shards;
+    }
+
+    @Override
+    public SpawnerRegistry load(Logger logger) throws IOException {
+        final SpawnerRegistry registry = new SpawnerRegistry();
+        final List<SpawnerRegistry> shards = parallel(listShards(), shard -> new NbtSpawnerStorage(shard).load(logger));
+        shards.forEach(registry::putAll);
+
+        final File legacyFile = new File(folder, LEGACY_FILE);
+        final Map<String, ConfigurationSection> legacy = new AtomicFile(legacyFile, 0, YamlSpawnerStorage::readLegacy).read(YamlSpawnerStorage::readLegacy, logger);
+        if(legacy != null) legacy.forEach(registry::addUnresolved);
+        return registry;
+    }
+
+    // 分片逐个读取，同一世界的分片在同一目录下，记录按世界连续输出
+    @Override
+    public void read(Sink sink, Logger logger) throws IOException {
+        for (File shard : listShards()) {
+            new NbtSpawnerStorage(shard).read(sink, logger);
+        }
+        final Map<String, ConfigurationSection> legacy = new AtomicFile(new File(folder, LEGACY_FILE), 0, YamlSpawnerStorage::readLegacy).read(YamlSpawnerStorage::readLegacy, logger);
+        if(legacy != null) {
+            for (Map.Entry<String, ConfigurationSection> entry : legacy.entrySet()) {
+                sink.acceptUnresolved(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    // 记录按区域缓冲，缓冲满时写出，已写过的分片读回合并，内存中最多保留 FLUSH_SIZE 条记录
+    @Override
+    public BulkWriter openWriter() {
+        return new BulkWriter() {
+            private final Map<RegionKey, List<SpawnerRecord>> buffered = new HashMap<>();
+            private final Set<RegionKey> written = new HashSet<>();
+            private final Map<String, Map<String, Object>> unresolved = new LinkedHashMap<>();
+            private int size;
+
+            @Override
+            public void accept(UUID world, long pos, SpawnerRecord record) throws IOException {
+                record.setLocation(world, pos);
+                buffered.computeIfAbsent(RegionKey.of(world, pos), k -> new ArrayList<>()).add(record);
+                if(++size >= FLUSH_SIZE) flush();
+            }
+
+            @Override
+            public void acceptUnresolved(String name, ConfigurationSection section) {
+                unresolved.put(name, section.getValues(true));
+            }
+
+            private void flush() throws IOException {
+                parallel(buffered.entrySet(), entry -> {
+                    final File shard = getShard(entry.getKey());
+                    final List<SpawnerRecord> records = new ArrayList<>(entry.getValue());
+                    if(written.contains(entry.getKey())) {
+                        records.addAll(new NbtSpawnerStorage(shard).load(Logger.getAnonymousLogger()).snapshot().records());
+                    }
+                    writeShard(shard, records);
+                    return null;
+                });
+                written.addAll(buffered.keySet());
+                buffered.clear();
+                size = 0;
+            }
+
+            @Override
+            public void commit() throws IOException {
+                flush();
+                if(!unresolved.isEmpty()) writeLegacy(unresolved);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public void save(SpawnerRegistry.Snapshot snapshot) throws IOException {
+        final Map<RegionKey, List<SpawnerRecord>> byRegion = new HashMap<>();
+        for (SpawnerRecord record : snapshot.records()) {
+            byRegion.computeIfAbsent(RegionKey.of(record.getWorld(), record.getPos()), k -> new ArrayList<>()).add(record);
+        }
+
+        final Set<RegionKey> regions = new HashSet<>(byRegion.keySet());
+        final Map<RegionKey, Set<ChunkKey>> replaced = new HashMap<>();
+        if(snapshot.isPartial()) {
+            // 部分快照只覆盖改动的区块，分片中其他区块的记录保留
+            for (ChunkKey chunk : snapshot.chunks()) {
+                final RegionKey region = RegionKey.of(chunk);
+                regions.add(region);
+                replaced.computeIfAbsent(region, k -> new HashSet<>()).add(chunk);
+            }
+        } else {
+            // 完整快照时，不再包含任何刷怪笼的旧分片也要删除
+            for (File shard : listShards()) {
+                final RegionKey region = parseShard(shard);
+                if(region != null) regions.add(region);
+            }
+        }
+
+        parallel(regions, region -> {
+            saveShard(region, byRegion.getOrDefault(region, List.of()), replaced.get(region));
+            return null;
+        });
+
+        if(!snapshot.isPartial()) {
+            writeLegacy(snapshot.unresolved());
+        }
+    }
+
+    // 合并、写入和更新缓存在区域锁内完成
+    private void saveShard(RegionKey region, List<SpawnerRecord> changed, @Nullable Set<ChunkKey> chunks) throws IOException {
+        synchronized (lock(region)) {
+            final List<SpawnerRecord> records = new ArrayList<>(changed);
+            if(chunks != null) {
+                for (SpawnerRecord record : readShard(region, Logger.getAnonymousLogger())) {
+                    if(!chunks.contains(ChunkKey.of(record.getWorld(), record.getPos()))) records.add(record);
+                }
+            }
+            writeShard(getShard(region), records);
+            synchronized (shardCache) {
+                shardCache.put(region, Collections.unmodifiableList(records));
+            }
+        }
+    }
+
+    private static @Nullable RegionKey parseShard(File shard) {
+        final String[] parts = shard.getName().split("\\.");
+        if(parts.length != 4) return null;
+        try {
+            return new RegionKey(UUID.fromString(shard.getParentFile().getName()), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static void writeShard(File shard, List<SpawnerRecord> records) throws IOException {
+        if(records.isEmpty()) {
+            if(shard.exists() && !shard.delete()) throw new IOException("Could not delete " + shard);
+            return;
+        }
+        final File world = shard.getParentFile();
+        if(!world.isDirectory() && !world.mkdirs()) throw new IOException("Could not create " + world);
+        new NbtSpawnerStorage(shard).save(new SpawnerRegistry.Snapshot(records, Map.of(), null));
+    }
+
+    private void writeLegacy(Map<String, Map<String, Object>> unresolved) throws IOException {
+        final File legacyFile = new File(folder, LEGACY_FILE);
+        if(unresolved.isEmpty()) {
+            if(legacyFile.exists() && !legacyFile.delete()) throw new IOException("Could not delete " + legacyFile);
+            return;
+        }
+        if(!folder.isDirectory() && !folder.mkdirs()) throw new IOException("Could not create " + folder);
+        final byte[] bytes = YamlSpawnerStorage.writeLegacy(unresolved);
+        new AtomicFile(legacyFile, 0).write(out -> out.write(bytes));
+    }
+}
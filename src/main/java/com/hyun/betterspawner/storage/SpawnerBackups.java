@@ -0,0 +1,520 @@
+package com.hyun.betterspawner.storage;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.EntityType;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Incremental, compressed backups of the stored spawner data in {@code backups/}.
+ */
+public class SpawnerBackups {
+    private static final int MAGIC = 0x4253424b; // "BSBK"
+    private static final int VERSION = 1;
+    private static final byte END = 0;
+    private static final byte RECORD = 1;
+    private static final byte LEGACY = 2;
+    private static final String RESTORE_FILE = "restore.txt";
+    private static final DateTimeFormatter ID_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final Pattern NAME = Pattern.compile("(\\d{8}-\\d{6})-(full|from-(\\d{8}-\\d{6}))\\.bsb");
+
+    /**
+     * A backup file.
+     *
+     * @param id the creation time, {@code yyyyMMdd-HHmmss}
+     * @param file the file
+     * @param base the id of the full backup this one is based on, null for a full backup
+     */
+    public record Backup(String id, File file, @Nullable String base) {
+
+        public boolean isFull() {
+            return base == null;
+        }
+
+        public long getCreated() {
+            return LocalDateTime.parse(id, ID_FORMAT).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+    }
+
+    private final File folder;
+    private final SpawnerStorage storage;
+    private final int fullEvery;
+    private final int maxCount;
+    private final long maxAge;
+    // 最近一次完整备份各区块的校验和，仅在写入线程访问
+    private Map<ChunkKey, Long> baseSums;
+    private String baseId;
+
+    /**
+     * @param folder the backup folder
+     * @param storage the storage to back up
+     * @param fullEvery every how many backups a full one is taken
+     * @param maxCount how many backups are kept at most
+     * @param maxAge how old backups may get in milliseconds, 0 to keep them regardless of age
+     */
+    public SpawnerBackups(File folder, SpawnerStorage storage, int fullEvery, int maxCount, long maxAge) {
+        this.folder = folder;
+        this.storage = storage;
+        this.fullEvery = Math.max(1, fullEvery);
+        this.maxCount = Math.max(1, maxCount);
+        this.maxAge = maxAge;
+    }
+
+    public File getFolder() {
+        return folder;
+    }
+
+    /**
+     * Lists the backups, oldest first.
+     *
+     * @return the backups
+     */
+    public List<Backup> list() {
+        final List<Backup> backups = new ArrayList<>();
+        final File[] files = folder.listFiles();
+        if(files == null) return backups;
+        for (File file : files) {
+            final Matcher matcher = NAME.matcher(file.getName());
+            if(matcher.matches()) backups.add(new Backup(matcher.group(1), file, matcher.group(3)));
+        }
+        backups.sort(Comparator.comparing(Backup::id));
+        return backups;
+    }
+
+    /**
+     * Finds a backup by id.
+     *
+     * @param id the id
+     * @return the backup, or null
+     */
+    public @Nullable Backup find(String id) {
+        for (Backup backup : list()) {
+            if(backup.id().equals(id)) return backup;
+        }
+        return null;
+    }
+
+    /**
+     * Takes a backup of what is currently stored, then deletes the backups which are too old.
+     * Must only be called from the writer thread.
+     *
+     * @param logger the logger
+     * @return the new backup
+     * @throws IOException if the storage cannot be read or the backup cannot be written
+     */
+    public Backup backup(Logger logger) throws IOException {
+        if(!folder.isDirectory() && !folder.mkdirs()) throw new IOException("Could not create " + folder);
+        final List<Backup> backups = list();
+        Backup base = null;
+        int since = 0;
+        for (Backup backup : backups) {
+            if(backup.isFull()) {
+                base = backup;
+                since = 0;
+            } else if(base != null && base.id().equals(backup.base())) {
+                since++;
+            }
+        }
+
+        String id = LocalDateTime.now().format(ID_FORMAT);
+        // 同一秒内的多次备份顺延
+        while (find(id) != null) {
+            id = LocalDateTime.parse(id, ID_FORMAT).plusSeconds(1).format(ID_FORMAT);
+        }
+
+        final Backup backup;
+        if(base == null || since + 1 >= fullEvery) {
+            backup = new Backup(id, new File(folder, id + "-full.bsb"), null);
+            final Map<ChunkKey, Long> sums = new HashMap<>();
+            write(backup, null, sums, logger);
+            baseSums = sums;
+            baseId = id;
+        } else {
+            if(!base.id().equals(baseId)) {
+                baseSums = sums(base, logger);
+                baseId = base.id();
+            }
+            // 第一遍只计算各区块的校验和，找出与完整备份不同的区块
+            final Map<ChunkKey, Long> sums = new HashMap<>();
+            storage.read(new SumSink(sums), logger);
+            final Set<ChunkKey> changed = new HashSet<>();
+            sums.forEach((chunk, sum) -> {
+                if(!sum.equals(baseSums.get(chunk))) changed.add(chunk);
+            });
+            for (ChunkKey chunk : baseSums.keySet()) {
+                if(!sums.containsKey(chunk)) changed.add(chunk);
+            }
+            backup = new Backup(id, new File(folder, id + "-from-" + base.id() + ".bsb"), base.id());
+            write(backup, changed, null, logger);
+        }
+        rotate(logger);
+        return backup;
+    }
+
+    // changed 为 null 时写入完整备份，并记录各区块的校验和
+    private void write(Backup backup, @Nullable Set<ChunkKey> changed, @Nullable Map<ChunkKey, Long> sums, Logger logger) throws IOException {
+        new AtomicFile(backup.file(), 0).write(out -> {
+            final GZIPOutputStream gzip = new GZIPOutputStream(out, 1 << 16);
+            final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(gzip, 1 << 16));
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            if(changed != null) {
+                data.writeInt(changed.size());
+                for (ChunkKey chunk : changed) {
+                    writeUuid(data, chunk.world());
+                    data.writeInt(chunk.x());
+                    data.writeInt(chunk.z());
+                }
+            }
+
+            final RecordChecksum checksum = new RecordChecksum();
+            storage.read(new SpawnerSource.Sink() {
+                @Override
+                public void accept(UUID world, long pos, SpawnerRecord record) throws IOException {
+                    final ChunkKey chunk = ChunkKey.of(world, pos);
+                    if(changed != null && !changed.contains(chunk)) return;
+                    if(sums != null) sums.merge(chunk, checksum.of(world, pos, record), Long::sum);
+                    data.writeByte(RECORD);
+                    writeUuid(data, world);
+                    data.writeLong(pos);
+                    writeString(data, record.getType() == null ? null : record.getType().name());
+                    data.writeInt(record.getDurability());
+                    data.writeInt(record.getMaxDurability());
+                    data.writeInt(record.getFlags());
+                    writeString(data, record.getDisplayName());
+                    writeString(data, record.getNbt());
+                }
+
+                // 无法解析的世界数据很少，每个备份都完整保存
+                @Override
+                public void acceptUnresolved(String name, ConfigurationSection section) throws IOException {
+                    final YamlConfiguration yaml = new YamlConfiguration();
+                    section.getValues(true).forEach((path, value) -> {
+                        if(!(value instanceof ConfigurationSection)) yaml.set(path, value);
+                    });
+                    data.writeByte(LEGACY);
+                    writeString(data, name);
+                    writeString(data, yaml.saveToString());
+                }
+            }, logger);
+            data.writeByte(END);
+            data.flush();
+            gzip.finish();
+        });
+    }
+
+    private Map<ChunkKey, Long> sums(Backup full, Logger logger) throws IOException {
+        final Map<ChunkKey, Long> sums = new HashMap<>();
+        read(full, null, new SumSink(sums), logger);
+        return sums;
+    }
+
+    /**
+     * Streams the data as of a backup, grouped by world.
+     *
+     * @param backup the backup
+     * @param sink the sink
+     * @param logger the logger
+     * @throws IOException if the backup or the full backup it is based on cannot be read
+     */
+    public void read(Backup backup, SpawnerSource.Sink sink, Logger logger) throws IOException {
+        if(backup.isFull()) {
+            read(backup, null, sink, logger);
+            return;
+        }
+        final Backup base = find(backup.base());
+        if(base == null) throw new IOException("The full backup " + backup.base() + " of " + backup.id() + " is missing");
+
+        // 增量部分只含改动的区块，先读入内存，在完整备份读完对应世界后插入，保持按世界分组
+        final Set<ChunkKey> changed = new HashSet<>();
+        final Map<UUID, List<SpawnerRecord>> replaced = new LinkedHashMap<>();
+        final Map<String, ConfigurationSection> legacy = new LinkedHashMap<>();
+        read(backup, changed, new SpawnerSource.Sink() {
+            @Override
+            public void accept(UUID world, long pos, SpawnerRecord record) {
+                record.setLocation(world, pos);
+                replaced.computeIfAbsent(world, k -> new ArrayList<>()).add(record);
+            }
+
+            @Override
+            public void acceptUnresolved(String name, ConfigurationSection section) {
+                legacy.put(name, section);
+            }
+        }, logger);
+
+        final UUID[] current = {null};
+        read(base, null, new SpawnerSource.Sink() {
+            @Override
+            public void accept(UUID world, long pos, SpawnerRecord record) throws IOException {
+                if(!world.equals(current[0])) {
+                    if(current[0] != null) emit(replaced.remove(current[0]), sink);
+                    current[0] = world;
+                }
+                if(!changed.contains(ChunkKey.of(world, pos))) sink.accept(world, pos, record);
+            }
+
+            @Override
+            public void acceptUnresolved(String name, ConfigurationSection section) {
+            }
+        }, logger);
+        if(current[0] != null) emit(replaced.remove(current[0]), sink);
+        for (List<SpawnerRecord> records : replaced.values()) {
+            emit(records, sink);
+        }
+        for (Map.Entry<String, ConfigurationSection> entry : legacy.entrySet()) {
+            sink.acceptUnresolved(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static void emit(@Nullable List<SpawnerRecord> records, SpawnerSource.Sink sink) throws IOException {
+        if(records == null) return;
+        for (SpawnerRecord record : records) {
+            sink.accept(record.getWorld(), record.getPos(), record);
+        }
+    }
+
+    // changed 不为 null 时读取增量备份，改动的区块写入其中
+    private void read(Backup backup, @Nullable Set<ChunkKey> changed, SpawnerSource.Sink sink, Logger logger) throws IOException {
+        final Boolean read = new AtomicFile(backup.file(), 0).read(in -> {
+            final DataInputStream data = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in, 1 << 16), 1 << 16));
+            if(data.readInt() != MAGIC) throw new IOException(backup.file() + " is not a backup");
+            if(data.readInt() > VERSION) throw new IOException(backup.file() + " was written by a newer version");
+            if(!backup.isFull()) {
+                final int count = data.readInt();
+                for (int i = 0; i < count; i++) {
+                    final ChunkKey chunk = new ChunkKey(readUuid(data), data.readInt(), data.readInt());
+                    if(changed != null) changed.add(chunk);
+                }
+            }
+
+            byte type;
+            while ((type = data.readByte()) != END) {
+                if(type == RECORD) {
+                    final UUID world = readUuid(data);
+                    final long pos = data.readLong();
+                    final EntityType entityType = parseType(readString(data));
+                    final int durability = data.readInt();
+                    final int maxDurability = data.readInt();
+                    final int flags = data.readInt();
+                    sink.accept(world, pos, new SpawnerRecord(entityType, durability, maxDurability, flags, readString(data), readString(data)));
+                } else if(type == LEGACY) {
+                    final String name = readString(data);
+                    final YamlConfiguration section = new YamlConfiguration();
+                    try {
+                        section.loadFromString(Objects.requireNonNull(readString(data)));
+                    } catch (InvalidConfigurationException e) {
+                        logger.warning("Dropping unreadable legacy world " + name + " in " + backup.file().getName());
+                        continue;
+                    }
+                    sink.acceptUnresolved(name, section);
+                } else {
+                    throw new IOException("Unknown entry " + type + " in " + backup.file());
+                }
+            }
+            return Boolean.TRUE;
+        }, logger);
+        if(read == null) throw new IOException(backup.file() + " does not exist");
+    }
+
+    /**
+     * Deletes the oldest backups while there are more than {@code backup-max-count} or they
+     * are older than {@code backup-max-age}. The backups based on the newest full backup are
+     * always kept.
+     *
+     * @param logger the logger
+     */
+    public void rotate(Logger logger) {
+        final Map<String, List<Backup>> chains = new LinkedHashMap<>();
+        int remaining = 0;
+        for (Backup backup : list()) {
+            final List<Backup> chain = chains.get(backup.isFull() ? backup.id() : backup.base());
+            if(backup.isFull()) {
+                chains.put(backup.id(), new ArrayList<>(List.of(backup)));
+            } else if(chain != null) {
+                chain.add(backup);
+            } else {
+                // 完整备份已不存在，无法恢复
+                delete(backup, logger);
+                continue;
+            }
+            remaining++;
+        }
+
+        final long now = System.currentTimeMillis();
+        final Iterator<List<Backup>> iterator = chains.values().iterator();
+        for (int i = 0; i < chains.size() - 1; i++) {
+            final List<Backup> chain = iterator.next();
+            final boolean expired = maxAge > 0 && now - chain.get(chain.size() - 1).getCreated() > maxAge;
+            if(remaining <= maxCount && !expired) break;
+            for (Backup backup : chain) {
+                delete(backup, logger);
+            }
+            remaining -= chain.size();
+        }
+    }
+
+    private static void delete(Backup backup, Logger logger) {
+        if(!backup.file().delete()) logger.warning("Could not delete backup " + backup.file());
+    }
+
+    /**
+     * Remembers a backup to restore on the next start.
+     *
+     * @param backup the backup
+     * @throws IOException if the request cannot be saved
+     */
+    public void scheduleRestore(Backup backup) throws IOException {
+        Files.writeString(new File(folder, RESTORE_FILE).toPath(), backup.id(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the backup to restore on this start, see {@link #scheduleRestore(Backup)}.
+     *
+     * @param logger the logger
+     * @return the backup, or null if none was requested
+     */
+    public @Nullable Backup getPendingRestore(Logger logger) {
+        final File file = new File(folder, RESTORE_FILE);
+        if(!file.isFile()) return null;
+        try {
+            final String id = Files.readString(file.toPath(), StandardCharsets.UTF_8).trim();
+            final Backup backup = find(id);
+            if(backup == null) {
+                logger.warning("Backup " + id + " requested in " + file + " does not exist");
+                clearRestore();
+            }
+            return backup;
+        } catch (IOException e) {
+            logger.warning("Could not read " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public void clearRestore() {
+        final File file = new File(folder, RESTORE_FILE);
+        if(file.exists() && !file.delete()) file.deleteOnExit();
+    }
+
+    /**
+     * Replaces the data of a storage with a backup. The current data is moved aside to
+     * {@code <file>.before-<id>}, together with files such as the SQLite {@code -wal}, and
+     * moved back if the backup cannot be restored.
+     *
+     * @param backup the backup
+     * @param format the format name of the storage
+     * @param target the storage, must not be open
+     * @param logger the logger
+     * @return the number of restored records
+     * @throws IOException if the backup cannot be restored
+     */
+    public long restore(Backup backup, String format, SpawnerStorage target, Logger logger) throws IOException {
+        final File current = target.getFile();
+        final File aside = new File(current.getPath() + ".before-" + backup.id());
+        SpawnerMigrator.deleteStaging(aside);
+        move(current, aside);
+        try {
+            return new SpawnerMigrator(open(backup), format, target).run(logger);
+        } catch (IOException | RuntimeException e) {
+            move(aside, current);
+            throw e;
+        }
+    }
+
+    // 连同 SQLite 的 -wal、-shm 等附属文件一起移动，否则留下的日志会被重放到恢复的数据上
+    private static void move(File from, File to) throws IOException {
+        final String prefix = from.getName() + "-";
+        final File[] sidecars = from.getAbsoluteFile().getParentFile().listFiles((dir, name) -> name.startsWith(prefix));
+        if(from.exists()) Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        if(sidecars == null) return;
+        for (File sidecar : sidecars) {
+            final File moved = new File(to.getPath() + sidecar.getName().substring(from.getName().length()));
+            Files.move(sidecar.toPath(), moved.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    // 只读视图，供 SpawnerMigrator 作为数据源
+    private SpawnerSource open(Backup backup) {
+        return new SpawnerSource() {
+            @Override
+            public File getFile() {
+                return backup.file();
+            }
+
+            @Override
+            public void read(Sink sink, Logger logger) throws IOException {
+                SpawnerBackups.this.read(backup, sink, logger);
+            }
+        };
+    }
+
+    private static void writeUuid(DataOutputStream out, UUID uuid) throws IOException {
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private static UUID readUuid(DataInputStream in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+    // writeUTF 限制 64K，NBT 可能更长，与日志一样用 int 长度前缀，-1 表示 null
+    private static void writeString(DataOutputStream out, @Nullable String value) throws IOException {
+        if(value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static @Nullable String readString(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if(length < 0) return null;
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static @Nullable EntityType parseType(@Nullable String name) {
+        if(name == null) return null;
+        try {
+            return EntityType.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // 只按区块累加校验和，不保留记录
+    private static class SumSink implements SpawnerSource.Sink {
+        private final Map<ChunkKey, Long> sums;
+        private final RecordChecksum checksum = new RecordChecksum();
+
+        SumSink(Map<ChunkKey, Long> sums) {
+            this.sums = sums;
+        }
+
+        @Override
+        public void accept(UUID world, long pos, SpawnerRecord record) {
+            sums.merge(ChunkKey.of(world, pos), checksum.of(world, pos, record), Long::sum);
+        }
+
+        @Override
+        public void acceptUnresolved(String name, ConfigurationSection section) {
+        }
+    }
+}
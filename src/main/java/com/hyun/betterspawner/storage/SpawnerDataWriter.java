@@ -0,0 +1,232 @@
+package com.hyun.betterspawner.storage;
+
+import com.hyun.betterspawner.BetterSpawner;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Write-behind persistence for the spawner data, saved on a dedicated writer thread.
+ */
+public class SpawnerDataWriter {
+    private final BetterSpawner plugin;
+    private final SpawnerStorage storage;
+    private final SpawnerJournal journal;
+    private final long compactSize;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        final Thread thread = new Thread(r, "BetterSpawner-Writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private BukkitTask task;
+    private BukkitTask commitTask;
+    private BukkitTask compactTask;
+    private BukkitTask backupTask;
+    private SpawnerBackups backups;
+    // 上次完整快照之后是否有改动
+    private boolean dirty;
+    // 分片快照写入失败后，下次改为完整快照，避免漏掉失败的分片
+    private volatile boolean fullSnapshot;
+    private SpawnerWorkingSet workingSet;
+    private DurabilityTable counters;
+    // 最后一次快照是否写入失败
+    private volatile boolean failed;
+
+    /**
+     * @param plugin the plugin
+     * @param storage the storage snapshots are written to
+     * @param journal the journal the registry logs to
+     * @param compactSize the journal size in bytes which triggers a snapshot on its own
+     */
+    public SpawnerDataWriter(BetterSpawner plugin, SpawnerStorage storage, SpawnerJournal journal, long compactSize) {
+        this.plugin = plugin;
+        this.storage = storage;
+        this.journal = journal;
+        this.compactSize = compactSize;
+    }
+
+    /**
+     * Starts flushing changes every {@code intervalTicks} ticks and writing a full snapshot
+     * every {@code compactIntervalTicks} ticks.
+     *
+     * @param intervalTicks the flush interval in ticks
+     * @param compactIntervalTicks the full snapshot interval in ticks
+     */
+    public void start(long intervalTicks, long compactIntervalTicks) {
+        task = plugin.getServer().getScheduler().runTaskTimer(plugin, this::flush, intervalTicks, intervalTicks);
+        compactTask = plugin.getServer().getScheduler().runTaskTimer(plugin, this::compactAll, compactIntervalTicks, compactIntervalTicks);
+        commitTask = plugin.getServer().getScheduler().runTaskTimer(plugin, this::commit, 1L, 1L);
+    }
+
+    /**
+     * Hands the entries logged during this tick to the writer thread, one write per tick
+     * no matter how many spawners changed.
+     */
+    public void commit() {
+        final byte[] data = journal.drain();
+        if(data == null) return;
+        executor.execute(() -> {
+            try {
+                journal.append(data);
+            } catch (IOException ex) {
+                plugin.getLogger().log(Level.SEVERE, "Could not append to " + journal.getFile(), ex);
+            }
+        });
+    }
+
+    /**
+     * Attaches the working set which needs to know about written chunks. A working set
+     * requires a storage supporting partial snapshots.
+     *
+     * @param workingSet the working set
+     */
+    public void setWorkingSet(SpawnerWorkingSet workingSet) {
+        this.workingSet = workingSet;
+    }
+
+    /**
+     * Attaches the counter table, whose pages are forced to disk on every flush.
+     *
+     * @param counters the counter table
+     */
+    public void setCounters(DurabilityTable counters) {
+        this.counters = counters;
+    }
+
+    /**
+     * Attaches the backups and starts taking one every {@code intervalTicks} ticks.
+     *
+     * @param backups the backups
+     * @param intervalTicks the backup interval in ticks, 0 to only take backups on request
+     */
+    public void startBackups(SpawnerBackups backups, long intervalTicks) {
+        this.backups = backups;
+        if(intervalTicks <= 0) return;
+        backupTask = plugin.getServer().getScheduler().runTaskTimer(plugin, () -> backup().whenComplete((backup, ex) -> {
+            if(ex != null) plugin.getLogger().log(Level.SEVERE, "Could not back up " + storage.getFile(), ex.getCause());
+        }), intervalTicks, intervalTicks);
+    }
+
+    /**
+     * Saves the pending changes and hands a backup to the writer thread.
+     * Must be called from the main thread.
+     *
+     * @return completes on the writer thread with the new backup
+     */
+    public CompletableFuture<SpawnerBackups.Backup> backup() {
+        if(backups == null) throw new IllegalStateException("Backups are not enabled");
+        commit();
+        if(journal.getUncompacted() > 0 || plugin.getSpawners().hasDirtyChunks()) compact(false);
+        return CompletableFuture.supplyAsync(() -> {
+            // 刚才的快照没有写入时，存储中不是最新数据
+            if(failed) throw new IllegalStateException("The last save of " + storage.getFile() + " failed");
+            try {
+                return backups.backup(plugin.getLogger());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    public void markDirty() {
+        dirty = true;
+    }
+
+    /**
+     * Hands the changed chunks to the writer thread if the storage supports partial
+     * snapshots, or the whole data if the journal outgrew the compaction size.
+     * Must be called from the main thread.
+     */
+    public void flush() {
+        commit();
+        if(counters != null) executor.execute(counters::force);
+        if(journal.getUncompacted() >= compactSize
+                || storage.supportsPartialSnapshots() && plugin.getSpawners().hasDirtyChunks()
+                || workingSet != null && workingSet.hasPendingEvictions()) {
+            compact(false);
+        }
+    }
+
+    /**
+     * Hands a full snapshot to the writer thread if anything changed since the last one.
+     * Must be called from the main thread.
+     */
+    public void compactAll() {
+        commit();
+        if(!dirty && !plugin.getSpawners().hasDirtyChunks() && journal.getUncompacted() == 0) return;
+        compact(true);
+    }
+
+    private void compact(boolean full) {
+        journal.markRotated();
+        // 工作集模式下内存中只有已加载区块，完整快照会删除其余数据
+        final boolean partial = workingSet != null || storage.supportsPartialSnapshots() && !full && !fullSnapshot;
+        if(partial) {
+            dirty = true;
+        } else {
+            dirty = false;
+            fullSnapshot = false;
+        }
+        final SpawnerRegistry.Snapshot snapshot = plugin.getSpawners().snapshot(partial);
+        if(workingSet != null) workingSet.beginWrite(snapshot);
+        executor.execute(() -> write(snapshot));
+    }
+
+    /**
+     * Stops the flush task, submits a final snapshot and waits at most
+     * {@code timeoutMillis} for the writer thread to finish.
+     *
+     * @param timeoutMillis the maximum time to wait
+     * @return true if the storage is known to hold the final state
+     */
+    public boolean shutdown(long timeoutMillis) {
+        if(task != null) task.cancel();
+        if(commitTask != null) commitTask.cancel();
+        if(compactTask != null) compactTask.cancel();
+        if(backupTask != null) backupTask.cancel();
+        commit();
+        if(journal.getUncompacted() > 0 || plugin.getSpawners().hasDirtyChunks()) compact(false);
+        executor.execute(journal::close);
+        executor.shutdown();
+        try {
+            if(!executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                plugin.getLogger().warning("Timed out while waiting for " + storage.getFile() + " to be saved");
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return !failed;
+    }
+
+    // 先轮转日志再写快照，快照写入成功后旧日志才可删除
+    private void write(SpawnerRegistry.Snapshot snapshot) {
+        try {
+            journal.rotate();
+            storage.save(snapshot);
+            journal.discardRotated();
+            failed = false;
+            written(snapshot, true);
+        } catch (IOException ex) {
+            failed = true;
+            if(workingSet == null) fullSnapshot = true;
+            written(snapshot, false);
+            plugin.getLogger().log(Level.SEVERE, "Could not save config to " + storage.getFile(), ex);
+        }
+    }
+
+    private void written(SpawnerRegistry.Snapshot snapshot, boolean saved) {
+        final SpawnerWorkingSet workingSet = this.workingSet;
+        // 关闭时插件已禁用，无法再调度，也不再需要释放内存
+        if(workingSet == null || !plugin.isEnabled()) return;
+        plugin.getServer().getScheduler().runTask(plugin, () -> workingSet.endWrite(snapshot, saved));
+    }
+}
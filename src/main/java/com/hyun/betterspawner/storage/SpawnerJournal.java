@@ -0,0 +1,320 @@
+package com.hyun.betterspawner.storage;
+
+import org.bukkit.entity.EntityType;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of spawner mutations written between two snapshots.
+ */
+public class SpawnerJournal implements SpawnerRegistry.Observer {
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_UPDATE = 3;
+
+    private final File file;
+    private final File rotated;
+
+    // 主线程编码缓冲
+    private final ByteArrayOutputStream entry = new ByteArrayOutputStream(64);
+    private final DataOutputStream entryOut = new DataOutputStream(entry);
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream(1024);
+    private final DataOutputStream pendingOut = new DataOutputStream(pending);
+    private final CRC32 crc = new CRC32();
+    private long uncompacted;
+
+    // 仅在写入线程访问
+    private FileOutputStream stream;
+
+    public SpawnerJournal(File file) {
+        this.file = file;
+        this.rotated = new File(file.getPath() + ".1");
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Checks whether any segment is left over from the last run.
+     *
+     * @return true if there is something to replay
+     */
+    public boolean exists() {
+        return file.exists() || rotated.exists();
+    }
+
+    /**
+     * Logs a record which was placed, replacing whatever was registered at its location.
+     *
+     * @param record the registered record
+     */
+    @Override
+    public void onPut(SpawnerRecord record) {
+        try {
+            writeLocation(OP_PUT, record);
+            writeString(record.getType() == null ? null : record.getType().name());
+            entryOut.writeInt(record.getDurability());
+            entryOut.writeInt(record.getMaxDurability());
+            entryOut.writeInt(record.getFlags());
+            writeString(record.getDisplayName());
+            writeString(record.getNbt());
+            endEntry();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Logs the removal of the record at a location.
+     *
+     * @param world the world uid
+     * @param pos the packed position
+     */
+    @Override
+    public void onRemove(UUID world, long pos) {
+        try {
+            writeLocation(OP_REMOVE, world, pos);
+            endEntry();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Logs the current type and durability of a registered record.
+     *
+     * @param record the changed record
+     */
+    @Override
+    public void onChange(SpawnerRecord record) {
+        try {
+            writeLocation(OP_UPDATE, record);
+            writeString(record.getType() == null ? null : record.getType().name());
+            entryOut.writeInt(record.getDurability());
+            endEntry();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Takes the entries logged since the last call. Must be called from the main thread.
+     *
+     * @return the encoded entries, or null if nothing was logged
+     */
+    public @Nullable byte[] drain() {
+        if(pending.size() == 0) return null;
+        final byte[] data = pending.toByteArray();
+        pending.reset();
+        uncompacted += data.length;
+        return data;
+    }
+
+    /**
+     * Gets how many bytes were drained since the journal was last rotated.
+     *
+     * @return the size of the live segment
+     */
+    public long getUncompacted() {
+        return uncompacted;
+    }
+
+    /**
+     * Appends drained entries to the live segment and forces them to disk.
+     * Must only be called from the writer thread.
+     *
+     * @param data the entries returned by {@link #drain()}
+     * @throws IOException if the entries cannot be written
+     */
+    public void append(byte[] data) throws IOException {
+        if(stream == null) stream = new FileOutputStream(file, true);
+        stream.write(data);
+        stream.getChannel().force(false);
+    }
+
+    /**
+     * Marks the start of a new segment, all entries drained so far belong to the next snapshot.
+     * Must be called from the main thread, right before the snapshot is taken.
+     */
+    public void markRotated() {
+        uncompacted = 0;
+    }
+
+    /**
+     * Moves the live segment aside so entries logged after the snapshot start a new one.
+     * If an older segment is still around because its snapshot failed, the live one is
+     * appended to it. Must only be called from the writer thread.
+     *
+     * @throws IOException if the segment cannot be moved
+     */
+    public void rotate() throws IOException {
+        close();
+        if(!file.exists()) return;
+        if(rotated.exists()) {
+            Files.write(rotated.toPath(), Files.readAllBytes(file.toPath()), StandardOpenOption.APPEND);
+            Files.delete(file.toPath());
+        } else if(!file.renameTo(rotated)) {
+            throw new IOException("Could not rename " + file + " to " + rotated);
+        }
+    }
+
+    /**
+     * Deletes the rotated segment once the snapshot covering it has been written.
+     */
+    public void discardRotated() {
+        if(rotated.exists() && !rotated.delete()) {
+            rotated.deleteOnExit();
+        }
+    }
+
+    /**
+     * Deletes every segment, only valid while nothing is appending.
+     */
+    public void discard() {
+        close();
+        discardRotated();
+        if(file.exists() && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    public void close() {
+        if(stream == null) return;
+        try {
+            stream.close();
+        } catch (IOException ignored) {
+        }
+        stream = null;
+    }
+
+    /**
+     * Applies every segment on top of a freshly loaded registry, oldest first.
+     *
+     * @param registry the registry loaded from the last snapshot
+     * @param logger the logger to report damaged entries to
+     * @return the number of applied entries
+     */
+    public int replay(SpawnerRegistry registry, Logger logger) {
+        return replay(rotated, registry, logger) + replay(file, registry, logger);
+    }
+
+    private static int replay(File segment, SpawnerRegistry registry, Logger logger) {
+        if(!segment.isFile()) return 0;
+
+        final ByteBuffer buffer;
+        try {
+            buffer = ByteBuffer.wrap(Files.readAllBytes(segment.toPath()));
+        } catch (IOException e) {
+            logger.severe("Could not read journal " + segment + ": " + e.getMessage());
+            return 0;
+        }
+
+        final CRC32 crc = new CRC32();
+        int applied = 0;
+        while (buffer.remaining() >= 8) {
+            final int length = buffer.getInt();
+            final int checksum = buffer.getInt();
+            if(length <= 0 || length > buffer.remaining()) break;
+
+            crc.reset();
+            crc.update(buffer.array(), buffer.position(), length);
+            if((int) crc.getValue() != checksum) break;
+
+            final ByteBuffer payload = buffer.slice(buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            apply(payload, registry);
+            applied++;
+        }
+        if(buffer.hasRemaining()) {
+            logger.warning("Dropped " + buffer.remaining() + " damaged bytes at the end of journal " + segment);
+        }
+        return applied;
+    }
+
+    private static void apply(ByteBuffer in, SpawnerRegistry registry) {
+        final byte op = in.get();
+        final UUID world = new UUID(in.getLong(), in.getLong());
+        final long pos = in.getLong();
+        switch (op) {
+            case OP_PUT -> {
+                final EntityType type = parseType(readString(in));
+                final int durability = in.getInt();
+                final int maxDurability = in.getInt();
+                final int flags = in.getInt();
+                registry.put(world, pos, new SpawnerRecord(type, durability, maxDurability, flags, readString(in), readString(in)));
+            }
+            case OP_REMOVE -> registry.remove(world, pos);
+            case OP_UPDATE -> {
+                final EntityType type = parseType(readString(in));
+                final int durability = in.getInt();
+                final SpawnerRecord record = registry.get(world, pos);
+                if(record != null) {
+                    record.setType(type);
+                    record.setDurability(durability);
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    private void writeLocation(byte op, SpawnerRecord record) throws IOException {
+        final UUID world = record.getWorld();
+        if(world == null) throw new IllegalStateException("Record is not registered: " + record);
+        writeLocation(op, world, record.getPos());
+    }
+
+    private void writeLocation(byte op, UUID world, long pos) throws IOException {
+        entryOut.writeByte(op);
+        entryOut.writeLong(world.getMostSignificantBits());
+        entryOut.writeLong(world.getLeastSignificantBits());
+        entryOut.writeLong(pos);
+    }
+
+    // writeUTF 限制 64K，NBT 可能更长，这里用 int 长度前缀，-1 表示 null
+    private void writeString(@Nullable String value) throws IOException {
+        if(value == null) {
+            entryOut.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        entryOut.writeInt(bytes.length);
+        entryOut.write(bytes);
+    }
+
+    private static @Nullable String readString(ByteBuffer in) {
+        final int length = in.getInt();
+        if(length < 0) return null;
+        final String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static @Nullable EntityType parseType(@Nullable String name) {
+        if(name == null) return null;
+        try {
+            return EntityType.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private void endEntry() throws IOException {
+        final byte[] bytes = entry.toByteArray();
+        crc.reset();
+        crc.update(bytes);
+        pendingOut.writeInt(bytes.length);
+        pendingOut.writeInt((int) crc.getValue());
+        pendingOut.write(bytes);
+        entry.reset();
+    }
+}
@@ -0,0 +1,228 @@
+package com.hyun.betterspawner.storage;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.LongConsumer;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Converts the data of one storage format into another, one record at a time.
+ */
+public class SpawnerMigrator {
+    private static final int LOG_INTERVAL = 100_000;
+    // 数据文件的旧版本 .1 到 .N，以及 SQLite 的 -wal、-shm 等附属文件
+    private static final Pattern RELATED = Pattern.compile("\\.[0-9]+|-.+");
+
+    public enum Phase {
+        PENDING, COPYING, VERIFYING, DONE, FAILED
+    }
+
+    private final SpawnerSource source;
+    private final SpawnerStorage target;
+    private final String format;
+    private volatile Phase phase = Phase.PENDING;
+    private volatile long copied;
+    private volatile long verified;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile String error;
+
+    /**
+     * @param source the storage or backup to read
+     * @param format the format name of the target
+     * @param target the storage to fill, must not hold any data
+     */
+    public SpawnerMigrator(SpawnerSource source, String format, SpawnerStorage target) {
+        this.source = source;
+        this.format = format;
+        this.target = target;
+    }
+
+    public SpawnerSource getSource() {
+        return source;
+    }
+
+    public SpawnerStorage getTarget() {
+        return target;
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    /**
+     * Gets how many records were copied so far.
+     *
+     * @return the copied records
+     */
+    public long getCopied() {
+        return copied;
+    }
+
+    /**
+     * Gets how many records were read back from the staging copy so far.
+     *
+     * @return the verified records
+     */
+    public long getVerified() {
+        return verified;
+    }
+
+    /**
+     * Gets how long the migration has been running, or ran for.
+     *
+     * @return the elapsed milliseconds
+     */
+    public long getElapsed() {
+        if(startedAt == 0) return 0;
+        return (finishedAt == 0 ? System.currentTimeMillis() : finishedAt) - startedAt;
+    }
+
+    /**
+     * Gets why the migration failed.
+     *
+     * @return the error message, or null
+     */
+    public @Nullable String getError() {
+        return error;
+    }
+
+    /**
+     * Runs the migration on the calling thread.
+     *
+     * @param logger the logger to report progress to
+     * @return the number of migrated records
+     * @throws IOException if the data cannot be copied or the copy does not match, the target is left untouched
+     */
+    public long run(Logger logger) throws IOException {
+        startedAt = System.currentTimeMillis();
+        final File staging = new File(target.getFile().getPath() + ".migrating");
+        try {
+            deleteStaging(staging);
+            final SpawnerStorage stage = SpawnerStorage.open(format, staging, 0);
+            final Digest expected;
+            final Digest actual;
+            try {
+                phase = Phase.COPYING;
+                try (SpawnerStorage.BulkWriter writer = stage.openWriter()) {
+                    expected = new Digest(writer, logger, "Copied", count -> copied = count);
+                    source.read(expected, logger);
+                    writer.commit();
+                }
+
+                // 从暂存副本读回，数量和校验和都一致才替换
+                phase = Phase.VERIFYING;
+                actual = new Digest(null, logger, "Verified", count -> verified = count);
+                stage.read(actual, logger);
+            } finally {
+                stage.close();
+            }
+            if(!expected.matches(actual)) {
+                throw new IOException("The migrated data does not match: expected " + expected + " but found " + actual);
+            }
+
+            Files.move(staging.toPath(), target.getFile().toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            phase = Phase.DONE;
+            return expected.records;
+        } catch (IOException | RuntimeException e) {
+            error = e.getMessage();
+            phase = Phase.FAILED;
+            try {
+                deleteStaging(staging);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        } finally {
+            finishedAt = System.currentTimeMillis();
+        }
+    }
+
+    // 暂存文件及其临时文件、SQLite 的 -wal 等附属文件一并删除
+    static void deleteStaging(File staging) throws IOException {
+        final File[] files = staging.getAbsoluteFile().getParentFile().listFiles((dir, name) -> name.startsWith(staging.getName()));
+        if(files == null) return;
+        for (File file : files) {
+            try (Stream<Path> paths = Files.walk(file.toPath())) {
+                final List<Path> sorted = paths.sorted(Comparator.reverseOrder()).toList();
+                for (Path path : sorted) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Renames a migrated data file together with its previous versions and files such as the
+     * SQLite {@code -wal}, so none of them is found as data to migrate again.
+     *
+     * @param file the data file, or folder
+     * @param suffix appended to the name of every renamed file
+     * @throws IOException if a file cannot be renamed
+     */
+    public static void moveAside(File file, String suffix) throws IOException {
+        final String name = file.getName();
+        final File[] files = file.getAbsoluteFile().getParentFile().listFiles((dir, other) -> other.equals(name)
+                || other.startsWith(name) && RELATED.matcher(other.substring(name.length())).matches());
+        if(files == null) return;
+        for (File related : files) {
+            final File moved = new File(related.getParentFile(), name + suffix + related.getName().substring(name.length()));
+            Files.move(related.toPath(), moved.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // 统计经过的记录，并转发给下一个 sink
+    private static class Digest implements SpawnerSource.Sink {
+        private final SpawnerSource.Sink next;
+        private final Logger logger;
+        private final String action;
+        private final LongConsumer progress;
+        private final RecordChecksum crc = new RecordChecksum();
+        private long records;
+        private long unresolved;
+        private long checksum;
+
+        Digest(@Nullable SpawnerSource.Sink next, Logger logger, String action, LongConsumer progress) {
+            this.next = next;
+            this.logger = logger;
+            this.action = action;
+            this.progress = progress;
+        }
+
+        @Override
+        public void accept(UUID world, long pos, SpawnerRecord record) throws IOException {
+            checksum += crc.of(world, pos, record);
+            if(next != null) next.accept(world, pos, record);
+            progress.accept(++records);
+            if(records % LOG_INTERVAL == 0) {
+                logger.info(action + " " + records + " spawners");
+            }
+        }
+
+        @Override
+        public void acceptUnresolved(String name, ConfigurationSection section) throws IOException {
+            if(next != null) next.acceptUnresolved(name, section);
+            unresolved++;
+        }
+
+        boolean matches(Digest other) {
+            return records == other.records && unresolved == other.unresolved && checksum == other.checksum;
+        }
+
+        @Override
+        public String toString() {
+            return records + " spawners, " + unresolved + " legacy worlds, checksum " + Long.toHexString(checksum);
+        }
+    }
+}
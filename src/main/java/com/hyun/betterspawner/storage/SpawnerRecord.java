@@ -0,0 +1,123 @@
+package com.hyun.betterspawner.storage;
+
+import org.bukkit.entity.EntityType;
+
+import javax.annotation.Nullable;
+import java.util.UUID;
+
+/**
+ * The state of a single managed spawner.
+ */
+public class SpawnerRecord {
+    public static final int FLAG_DENY_BREAK = 1;
+    public static final int FLAG_DENY_CHANGE = 1 << 1;
+
+    private UUID world;
+    private long pos;
+    private EntityType type;
+    private int durability;
+    // 为负数时永不损耗
+    private int maxDurability;
+    // 1 禁止破坏，2 禁止更换刷怪类型
+    private int flags;
+    private String displayName;
+    private String nbt;
+    // DurabilityTable 中的槽位，-1 表示没有
+    private int slot = -1;
+
+    public SpawnerRecord(@Nullable EntityType type, int durability, int maxDurability, int flags, @Nullable String displayName, @Nullable String nbt) {
+        this.type = type;
+        this.durability = durability;
+        this.maxDurability = maxDurability;
+        this.flags = flags;
+        this.displayName = displayName;
+        this.nbt = nbt;
+    }
+
+    public SpawnerRecord copy() {
+        final SpawnerRecord copy = new SpawnerRecord(type, durability, maxDurability, flags, displayName, nbt);
+        copy.setLocation(world, pos);
+        return copy;
+    }
+
+    /**
+     * Gets the world this record is registered in.
+     *
+     * @return the world uid, or null if the record is not registered
+     */
+    public @Nullable UUID getWorld() {
+        return world;
+    }
+
+    /**
+     * Gets the packed block position, see {@link com.hyun.betterspawner.utils.BlockPos}.
+     *
+     * @return the packed position
+     */
+    public long getPos() {
+        return pos;
+    }
+
+    int getSlot() {
+        return slot;
+    }
+
+    void setSlot(int slot) {
+        this.slot = slot;
+    }
+
+    void setLocation(@Nullable UUID world, long pos) {
+        this.world = world;
+        this.pos = pos;
+    }
+
+    public @Nullable EntityType getType() {
+        return type;
+    }
+
+    public void setType(@Nullable EntityType type) {
+        this.type = type;
+    }
+
+    public int getDurability() {
+        return durability;
+    }
+
+    public void setDurability(int durability) {
+        this.durability = durability;
+    }
+
+    public int getMaxDurability() {
+        return maxDurability;
+    }
+
+    public boolean isUnlimited() {
+        return maxDurability < 0;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    public boolean isDenyBreak() {
+        return (flags & FLAG_DENY_BREAK) != 0;
+    }
+
+    public boolean isDenyChange() {
+        return (flags & FLAG_DENY_CHANGE) != 0;
+    }
+
+    public @Nullable String getDisplayName() {
+        return displayName;
+    }
+
+    public @Nullable String getNbt() {
+        return nbt;
+    }
+
+    @Override
+    public String toString() {
+        return "SpawnerRecord{type=" + type + ",durability=" + durability + ",maxDurability=" + maxDurability +
+                ",flags=" + flags + ",displayName=" + displayName + ",nbt=" + nbt + "}";
+    }
+}
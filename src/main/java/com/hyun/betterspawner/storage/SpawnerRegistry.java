@@ -0,0 +1,322 @@
+package com.hyun.betterspawner.storage;
+
+import com.hyun.betterspawner.utils.BlockPos;
+import com.hyun.betterspawner.utils.LongObjectMap;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.configuration.ConfigurationSection;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * In-memory registry of managed spawners, indexed by world uid and packed block position.
+ */
+public class SpawnerRegistry {
+    private final Map<UUID, LongObjectMap<SpawnerRecord>> worlds = new HashMap<>();
+    // 按区块索引，区块加载和卸载时不必遍历整个世界
+    private final Map<UUID, LongObjectMap<List<SpawnerRecord>>> chunks = new HashMap<>();
+    // 旧版数据以世界名为键，无法解析到 UID 的世界原样保留，避免保存时丢失
+    private final Map<String, ConfigurationSection> unresolved = new HashMap<>();
+    // 自上次快照以来有改动的区块，分片存储只重写这些区块
+    private final Set<ChunkKey> dirtyChunks = new HashSet<>();
+    private int size;
+    private Observer observer;
+    private DurabilityTable counters;
+
+    /**
+     * Receives every mutation of the registry, see {@link SpawnerJournal}.
+     */
+    public interface Observer {
+        void onPut(SpawnerRecord record);
+
+        void onRemove(UUID world, long pos);
+
+        void onChange(SpawnerRecord record);
+    }
+
+    public @Nullable SpawnerRecord get(UUID world, long pos) {
+        final LongObjectMap<SpawnerRecord> records = worlds.get(world);
+        return records == null ? null : records.get(pos);
+    }
+
+    public @Nullable SpawnerRecord get(World world, int x, int y, int z) {
+        return get(world.getUID(), BlockPos.asLong(x, y, z));
+    }
+
+    public @Nullable SpawnerRecord get(Block block) {
+        return get(block.getWorld(), block.getX(), block.getY(), block.getZ());
+    }
+
+    /**
+     * Starts passing every mutation to an observer.
+     *
+     * @param observer the observer, or null to stop
+     */
+    public void setObserver(@Nullable Observer observer) {
+        this.observer = observer;
+    }
+
+    /**
+     * Keeps the counters of every registered record in a table from now on, records
+     * registered so far are assigned a slot right away.
+     *
+     * @param counters the table, or null to stop
+     */
+    public void setCounters(@Nullable DurabilityTable counters) {
+        this.counters = counters;
+        if(counters == null) return;
+        worlds.forEach((world, records) -> records.forEach((pos, record) -> counters.assign(record)));
+    }
+
+    public void put(UUID world, long pos, SpawnerRecord record) {
+        insert(world, pos, record);
+        dirtyChunks.add(ChunkKey.of(world, pos));
+        if(observer != null) observer.onPut(record);
+    }
+
+    private void insert(UUID world, long pos, SpawnerRecord record) {
+        record.setLocation(world, pos);
+        final SpawnerRecord replaced = worlds.computeIfAbsent(world, k -> new LongObjectMap<>()).put(pos, record);
+        final LongObjectMap<List<SpawnerRecord>> worldChunks = chunks.computeIfAbsent(world, k -> new LongObjectMap<>());
+        final long chunkKey = BlockPos.chunkKeyOf(pos);
+        List<SpawnerRecord> inChunk = worldChunks.get(chunkKey);
+        if(inChunk == null) {
+            inChunk = new ArrayList<>(2);
+            worldChunks.put(chunkKey, inChunk);
+        }
+        if(replaced == null) {
+            size++;
+        } else {
+            inChunk.remove(replaced);
+            if(counters != null) counters.release(replaced);
+            replaced.setLocation(null, 0);
+        }
+        inChunk.add(record);
+        if(counters != null) counters.assign(record);
+    }
+
+    public void put(Block block, SpawnerRecord record) {
+        put(block.getWorld().getUID(), BlockPos.asLong(block.getX(), block.getY(), block.getZ()), record);
+    }
+
+    public @Nullable SpawnerRecord remove(UUID world, long pos) {
+        final SpawnerRecord removed = delete(world, pos);
+        if(removed != null) {
+            dirtyChunks.add(ChunkKey.of(world, pos));
+            if(observer != null) observer.onRemove(world, pos);
+        }
+        return removed;
+    }
+
+    private @Nullable SpawnerRecord delete(UUID world, long pos) {
+        final LongObjectMap<SpawnerRecord> records = worlds.get(world);
+        if(records == null) return null;
+        final SpawnerRecord removed = records.remove(pos);
+        if(removed != null) {
+            size--;
+            if(counters != null) counters.release(removed);
+            removed.setLocation(null, 0);
+            final LongObjectMap<List<SpawnerRecord>> worldChunks = chunks.get(world);
+            final long chunkKey = BlockPos.chunkKeyOf(pos);
+            final List<SpawnerRecord> inChunk = worldChunks.get(chunkKey);
+            inChunk.remove(removed);
+            if(inChunk.isEmpty()) worldChunks.remove(chunkKey);
+        }
+        return removed;
+    }
+
+    public @Nullable SpawnerRecord remove(Block block) {
+        return remove(block.getWorld().getUID(), BlockPos.asLong(block.getX(), block.getY(), block.getZ()));
+    }
+
+    /**
+     * Gets the records in a chunk.
+     *
+     * @param world the world uid
+     * @param chunkX the chunk x
+     * @param chunkZ the chunk z
+     * @return a copy of the records, empty if there are none
+     */
+    public List<SpawnerRecord> getChunk(UUID world, int chunkX, int chunkZ) {
+        final LongObjectMap<List<SpawnerRecord>> worldChunks = chunks.get(world);
+        final List<SpawnerRecord> inChunk = worldChunks == null ? null : worldChunks.get(BlockPos.chunkKey(chunkX, chunkZ));
+        return inChunk == null ? List.of() : new ArrayList<>(inChunk);
+    }
+
+    /**
+     * Adds a record read from the storage, which is neither marked dirty nor observed.
+     *
+     * @param world the world uid
+     * @param pos the packed position
+     * @param record the record
+     */
+    void load(UUID world, long pos, SpawnerRecord record) {
+        insert(world, pos, record);
+    }
+
+    /**
+     * Drops the records of a chunk without marking it dirty or notifying the observer,
+     * the caller is responsible for having persisted them.
+     *
+     * @param world the world uid
+     * @param chunkX the chunk x
+     * @param chunkZ the chunk z
+     * @return copies of the dropped records, still carrying their location
+     */
+    List<SpawnerRecord> evict(UUID world, int chunkX, int chunkZ) {
+        final List<SpawnerRecord> records = getChunk(world, chunkX, chunkZ);
+        for (int i = 0; i < records.size(); i++) {
+            final SpawnerRecord record = records.get(i);
+            records.set(i, record.copy());
+            delete(world, record.getPos());
+        }
+        return records;
+    }
+
+    /**
+     * Checks whether any chunk changed since the last snapshot.
+     *
+     * @return true if there are dirty chunks
+     */
+    public boolean hasDirtyChunks() {
+        return !dirtyChunks.isEmpty();
+    }
+
+    /**
+     * Checks whether a chunk changed since the last snapshot.
+     *
+     * @param chunk the chunk
+     * @return true if the chunk is dirty
+     */
+    public boolean isDirty(ChunkKey chunk) {
+        return dirtyChunks.contains(chunk);
+    }
+
+    /**
+     * Marks chunks as changed again, used when the snapshot containing them could not be written.
+     *
+     * @param chunks the chunks
+     */
+    public void markDirty(Collection<ChunkKey> chunks) {
+        dirtyChunks.addAll(chunks);
+    }
+
+    /**
+     * Records that the type or durability of a registered record was changed in place.
+     *
+     * @param record the changed record
+     */
+    public void changed(SpawnerRecord record) {
+        if(record.getWorld() == null) return;
+        dirtyChunks.add(ChunkKey.of(record.getWorld(), record.getPos()));
+        if(observer != null) observer.onChange(record);
+    }
+
+    /**
+     * Records that only the durability of a registered record was changed in place.
+     * With a counter table the new value is written into the record's slot, otherwise
+     * this is the same as {@link #changed(SpawnerRecord)}.
+     *
+     * @param record the changed record
+     */
+    public void durabilityChanged(SpawnerRecord record) {
+        if(record.getWorld() == null) return;
+        if(counters == null) {
+            changed(record);
+            return;
+        }
+        dirtyChunks.add(ChunkKey.of(record.getWorld(), record.getPos()));
+        counters.write(record);
+    }
+
+    /**
+     * Forgets which chunks changed, called once the registry is known to match the storage.
+     */
+    public void markClean() {
+        dirtyChunks.clear();
+    }
+
+    // 合并并行读取的分片
+    void putAll(SpawnerRegistry other) {
+        other.worlds.forEach((world, records) -> records.forEach((pos, record) -> load(world, pos, record)));
+        unresolved.putAll(other.unresolved);
+    }
+
+    // 无法解析到 UID 的旧版世界，由存储格式读入并在保存时原样写回
+    void addUnresolved(String name, ConfigurationSection section) {
+        unresolved.put(name, section);
+    }
+
+    // 存储格式流式读取时直接写入注册表
+    SpawnerSource.Sink sink() {
+        return new SpawnerSource.Sink() {
+            @Override
+            public void accept(UUID world, long pos, SpawnerRecord record) {
+                put(world, pos, record);
+            }
+
+            @Override
+            public void acceptUnresolved(String name, ConfigurationSection section) {
+                addUnresolved(name, section);
+            }
+        };
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Copies every record so the result can be serialized on another thread.
+     *
+     * @return the detached snapshot
+     */
+    public Snapshot snapshot() {
+        return snapshot(false);
+    }
+
+    /**
+     * Copies the records so the result can be serialized on another thread, and marks
+     * the registry clean.
+     *
+     * @param dirtyOnly whether to only copy the chunks which changed since the last snapshot
+     * @return the detached snapshot
+     */
+    public Snapshot snapshot(boolean dirtyOnly) {
+        final List<SpawnerRecord> records;
+        final Set<ChunkKey> dirty;
+        if(dirtyOnly) {
+            dirty = Set.copyOf(dirtyChunks);
+            records = new ArrayList<>();
+            for (ChunkKey chunk : dirty) {
+                for (SpawnerRecord record : getChunk(chunk.world(), chunk.x(), chunk.z())) {
+                    records.add(record.copy());
+                }
+            }
+        } else {
+            dirty = null;
+            records = new ArrayList<>(size);
+            worlds.values().forEach(map -> map.forEach((pos, record) -> records.add(record.copy())));
+        }
+        dirtyChunks.clear();
+
+        final Map<String, Map<String, Object>> legacy = new HashMap<>();
+        unresolved.forEach((name, section) -> legacy.put(name, section.getValues(true)));
+        return new Snapshot(records, legacy, dirty);
+    }
+
+    /**
+     * A detached copy of the registry which can be serialized on any thread.
+     *
+     * @param records copies of all records, with their locations
+     * @param unresolved the raw values of legacy worlds which could not be resolved to a uid
+     * @param chunks the chunks the records were taken from, null if the snapshot holds every record
+     */
+    public record Snapshot(List<SpawnerRecord> records, Map<String, Map<String, Object>> unresolved, @Nullable Set<ChunkKey> chunks) {
+
+        public boolean isPartial() {
+            return chunks != null;
+        }
+    }
+}
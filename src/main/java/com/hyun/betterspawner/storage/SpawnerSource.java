@@ -0,0 +1,60 @@
+package com.hyun.betterspawner.storage;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Read-only spawner data which can be streamed record by record, such as a storage or a backup.
+ */
+public interface SpawnerSource {
+
+    /**
+     * Receives the records streamed out of a source.
+     */
+    interface Sink {
+        /**
+         * Accepts a record.
+         *
+         * @param world the world uid
+         * @param pos the packed position
+         * @param record the record, owned by the sink
+         * @throws IOException if the sink cannot take the record
+         */
+        void accept(UUID world, long pos, SpawnerRecord record) throws IOException;
+
+        /**
+         * Accepts the raw data of a legacy world which could not be resolved to a uid.
+         *
+         * @param name the world name
+         * @param section the raw values
+         * @throws IOException if the sink cannot take the data
+         */
+        void acceptUnresolved(String name, ConfigurationSection section) throws IOException;
+    }
+
+    /**
+     * Gets the file the data is stored in.
+     *
+     * @return the data file
+     */
+    File getFile();
+
+    /**
+     * Streams every stored record into a sink, grouped by world.
+     *
+     * @param sink the sink
+     * @param logger the logger to report skipped records to
+     * @throws IOException if the data exists but cannot be read, or the sink fails
+     */
+    void read(Sink sink, Logger logger) throws IOException;
+
+    /**
+     * Releases any resource held open between reads.
+     */
+    default void close() {
+    }
+}
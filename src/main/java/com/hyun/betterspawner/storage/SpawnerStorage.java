@@ -0,0 +1,126 @@
+package com.hyun.betterspawner.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Logger;
+
+/**
+ * A serialization format for the spawner registry.
+ */
+public interface SpawnerStorage extends SpawnerSource {
+
+    /**
+     * Fills an empty storage with streamed records, see {@link #openWriter()}.
+     */
+    interface BulkWriter extends Sink, Closeable {
+        /**
+         * Writes out whatever is still buffered, the data is complete once this returns.
+         *
+         * @throws IOException if the data cannot be written
+         */
+        void commit() throws IOException;
+
+        /**
+         * Releases the writer. If it was not committed, what is left in the storage is
+         * incomplete and must be deleted by the caller.
+         */
+        @Override
+        void close();
+    }
+
+    /**
+     * Checks whether anything was saved yet, used to find data to migrate. Previous versions
+     * of the file are not counted, they are moved aside together with a migrated file.
+     *
+     * @return true if the data file exists and is not empty
+     */
+    default boolean hasData() {
+        return getFile().isFile() && getFile().length() > 0;
+    }
+
+    /**
+     * Checks whether {@link #save(SpawnerRegistry.Snapshot)} accepts partial snapshots, which
+     * only hold the regions that changed and leave the others untouched.
+     *
+     * @return true if partial snapshots are supported
+     */
+    default boolean supportsPartialSnapshots() {
+        return false;
+    }
+
+    /**
+     * Reads the whole registry.
+     *
+     * @param logger the logger to report skipped records to
+     * @return the loaded registry, empty if nothing was saved yet
+     * @throws IOException if the data exists but cannot be read
+     */
+    SpawnerRegistry load(Logger logger) throws IOException;
+
+    /**
+     * Opens a writer which fills this storage with streamed records. The storage must not
+     * hold any data yet.
+     *
+     * @return the writer
+     * @throws IOException if the storage cannot be opened for writing
+     */
+    BulkWriter openWriter() throws IOException;
+
+    /**
+     * Replaces the stored data with a snapshot, or only the regions it holds if it is partial.
+     *
+     * @param snapshot the snapshot taken by {@link SpawnerRegistry#snapshot()}
+     * @throws IOException if the data cannot be written
+     */
+    void save(SpawnerRegistry.Snapshot snapshot) throws IOException;
+
+    /**
+     * Creates the storage for a {@code storage-format} config value.
+     *
+     * @param format the format name, {@code yaml}, {@code nbt}, {@code sqlite} or {@code region}
+     * @param dataFolder the plugin data folder
+     * @param generations how many previous versions single file formats keep, see {@link AtomicFile}
+     * @return the storage
+     * @throws IllegalArgumentException if the format is unknown
+     */
+    static SpawnerStorage create(String format, File dataFolder, int generations) {
+        return open(format, new File(dataFolder, fileName(format)), generations);
+    }
+
+    /**
+     * Creates the storage for a {@code storage-format} config value at another location.
+     *
+     * @param format the format name
+     * @param file the data file, or folder for {@code region}
+     * @param generations how many previous versions single file formats keep, see {@link AtomicFile}
+     * @return the storage
+     * @throws IllegalArgumentException if the format is unknown
+     */
+    static SpawnerStorage open(String format, File file, int generations) {
+        return switch (format.toLowerCase()) {
+            case "yaml", "yml" -> new YamlSpawnerStorage(file, generations);
+            case "nbt" -> new NbtSpawnerStorage(file, generations);
+            case "sqlite" -> new SqliteSpawnerStorage(file);
+            case "region" -> new RegionSpawnerStorage(file);
+            default -> throw new IllegalArgumentException("Unknown storage format " + format);
+        };
+    }
+
+    /**
+     * Gets the name of the data file of a format inside the plugin data folder.
+     *
+     * @param format the format name
+     * @return the file name
+     * @throws IllegalArgumentException if the format is unknown
+     */
+    static String fileName(String format) {
+        return switch (format.toLowerCase()) {
+            case "yaml", "yml" -> "spawnerData.yml";
+            case "nbt" -> "spawnerData.dat";
+            case "sqlite" -> "spawnerData.db";
+            case "region" -> "spawnerData";
+            default -> throw new IllegalArgumentException("Unknown storage format " + format);
+        };
+    }
+}
@@ -0,0 +1,213 @@
+package com.hyun.betterspawner.storage;
+
+import com.hyun.betterspawner.utils.LongObjectMap;
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.bukkit.plugin.Plugin;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+
+/**
+ * Keeps only the records of loaded chunks in the registry.
+ */
+public class SpawnerWorkingSet implements org.bukkit.event.Listener {
+    private final Plugin plugin;
+    private final SpawnerRegistry registry;
+    private final ChunkLoadingStorage storage;
+    private final Map<UUID, LongObjectMap<Boolean>> resident = new HashMap<>();
+    // 正在写入的快照中包含的区块及其快照数量
+    private final Map<ChunkKey, Integer> inFlight = new HashMap<>();
+    private final Set<ChunkKey> pendingEvict = new HashSet<>();
+    private final Map<ChunkKey, List<SpawnerRecord>> cache;
+    // 正在后台读取的区块，值为读取期间区块是否仍处于加载状态
+    private final Map<ChunkKey, Boolean> reading = new HashMap<>();
+    private final ExecutorService reader = Executors.newSingleThreadExecutor(r -> {
+        final Thread thread = new Thread(r, "BetterSpawner-ChunkLoader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SpawnerWorkingSet(Plugin plugin, SpawnerRegistry registry, ChunkLoadingStorage storage, int cacheSize) {
+        this.plugin = plugin;
+        this.registry = registry;
+        this.storage = storage;
+        this.cache = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ChunkKey, List<SpawnerRecord>> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Loads the records of every chunk of a world which is already loaded.
+     *
+     * @param world the world
+     */
+    public void scan(World world) {
+        for (Chunk chunk : world.getLoadedChunks()) {
+            load(new ChunkKey(world.getUID(), chunk.getX(), chunk.getZ()));
+        }
+    }
+
+    /**
+     * Checks whether the records of a chunk are still being read. Spawner events in such a
+     * chunk are deferred like while the whole data is loading.
+     *
+     * @param chunk the chunk
+     * @return true if the registry does not hold the chunk's records yet
+     */
+    public boolean isLoading(ChunkKey chunk) {
+        return reading.containsKey(chunk);
+    }
+
+    /**
+     * Stops reading chunks, records which are still being read are dropped.
+     */
+    public void close() {
+        reader.shutdownNow();
+        reading.clear();
+    }
+
+    /**
+     * Checks whether unloaded chunks wait for a snapshot before they can be dropped.
+     *
+     * @return true if a snapshot would free memory
+     */
+    public boolean hasPendingEvictions() {
+        return !pendingEvict.isEmpty();
+    }
+
+    /**
+     * Called on the main thread when a partial snapshot is handed to the writer.
+     *
+     * @param snapshot the snapshot
+     */
+    public void beginWrite(SpawnerRegistry.Snapshot snapshot) {
+        for (ChunkKey chunk : snapshot.chunks()) {
+            inFlight.merge(chunk, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Called on the main thread once the writer is done with a snapshot.
+     *
+     * @param snapshot the snapshot
+     * @param saved whether it was written, if not its chunks are marked dirty again
+     */
+    public void endWrite(SpawnerRegistry.Snapshot snapshot, boolean saved) {
+        for (ChunkKey chunk : snapshot.chunks()) {
+            inFlight.computeIfPresent(chunk, (k, count) -> count == 1 ? null : count - 1);
+        }
+        if(!saved) {
+            registry.markDirty(snapshot.chunks());
+            return;
+        }
+
+        final Iterator<ChunkKey> it = pendingEvict.iterator();
+        while (it.hasNext()) {
+            final ChunkKey chunk = it.next();
+            if(registry.isDirty(chunk) || inFlight.containsKey(chunk)) continue;
+            it.remove();
+            evict(chunk);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onChunkLoad(ChunkLoadEvent e) {
+        load(new ChunkKey(e.getWorld().getUID(), e.getChunk().getX(), e.getChunk().getZ()));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent e) {
+        unload(new ChunkKey(e.getWorld().getUID(), e.getChunk().getX(), e.getChunk().getZ()));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldUnload(WorldUnloadEvent e) {
+        final UUID world = e.getWorld().getUID();
+        reading.replaceAll((chunk, wanted) -> chunk.world().equals(world) ? Boolean.FALSE : wanted);
+        final LongObjectMap<Boolean> chunks = resident.get(world);
+        if(chunks == null) return;
+        final List<ChunkKey> keys = new ArrayList<>(chunks.size());
+        chunks.forEach((key, ignored) -> keys.add(new ChunkKey(world, (int) (key >> 32), (int) key)));
+        keys.forEach(this::unload);
+    }
+
+    private void load(ChunkKey chunk) {
+        pendingEvict.remove(chunk);
+        final LongObjectMap<Boolean> chunks = resident.get(chunk.world());
+        if(chunks != null && chunks.containsKey(chunk.key())) return;
+
+        // 读取中的区块再次加载时只需恢复标记
+        if(reading.replace(chunk, Boolean.TRUE) != null) return;
+
+        final List<SpawnerRecord> records = cache.remove(chunk);
+        if(records != null) {
+            insert(chunk, records);
+            return;
+        }
+        reading.put(chunk, Boolean.TRUE);
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return storage.loadChunk(chunk, plugin.getLogger());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, reader).whenComplete((loaded, ex) -> {
+            if(plugin.isEnabled()) plugin.getServer().getScheduler().runTask(plugin, () -> loaded(chunk, loaded, ex));
+        });
+    }
+
+    private void loaded(ChunkKey chunk, @Nullable List<SpawnerRecord> records, @Nullable Throwable ex) {
+        final Boolean wanted = reading.remove(chunk);
+        if(wanted == null) return;
+        if(ex != null) {
+            plugin.getLogger().log(Level.SEVERE, "Could not load the spawners of chunk " + chunk, ex instanceof CompletionException ? ex.getCause() : ex);
+            return;
+        }
+        // 读取期间区块已卸载，记录先放入缓存
+        if(!wanted) {
+            cache.put(chunk, records);
+            return;
+        }
+        insert(chunk, records);
+    }
+
+    private void insert(ChunkKey chunk, List<SpawnerRecord> records) {
+        for (SpawnerRecord record : records) {
+            registry.load(chunk.world(), record.getPos(), record);
+        }
+        resident.computeIfAbsent(chunk.world(), k -> new LongObjectMap<>()).put(chunk.key(), Boolean.TRUE);
+    }
+
+    private void unload(ChunkKey chunk) {
+        reading.computeIfPresent(chunk, (k, wanted) -> Boolean.FALSE);
+        final LongObjectMap<Boolean> chunks = resident.get(chunk.world());
+        if(chunks == null || !chunks.containsKey(chunk.key())) return;
+        if(registry.isDirty(chunk) || inFlight.containsKey(chunk)) {
+            pendingEvict.add(chunk);
+            return;
+        }
+        evict(chunk);
+    }
+
+    private void evict(ChunkKey chunk) {
+        final LongObjectMap<Boolean> chunks = resident.get(chunk.world());
+        if(chunks == null || chunks.remove(chunk.key()) == null) return;
+        cache.put(chunk, registry.evict(chunk.world(), chunk.x(), chunk.z()));
+    }
+}
@@ -0,0 +1,330 @@
+package com.hyun.betterspawner.storage;
+
+import com.hyun.betterspawner.utils.BlockPos;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.EntityType;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Stores the registry in an SQLite database, {@code spawnerData.db}.
+ */
+public class SqliteSpawnerStorage implements ChunkLoadingStorage {
+    private static final int BATCH_SIZE = 1000;
+    private static final String INSERT = "INSERT OR REPLACE INTO spawners (world, x, y, z, chunk_x, chunk_z, type, durability, max_durability, flags, display_name, nbt) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_LEGACY = "INSERT OR REPLACE INTO legacy (name, yaml) VALUES (?, ?)";
+
+    private final File file;
+    // 同一时间只被一个线程使用，先是加载线程，之后是写入线程
+    private Connection connection;
+    // 单个区块的读取走第二个连接，WAL 模式下不必等待写入提交
+    private Connection readConnection;
+    private PreparedStatement chunkQuery;
+
+    public SqliteSpawnerStorage(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public boolean supportsPartialSnapshots() {
+        return true;
+    }
+
+    private static Connection open(File file) throws SQLException {
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("SQLite driver not found", e);
+        }
+        return DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+    }
+
+    private Connection connection() throws SQLException {
+        if(connection != null && !connection.isClosed()) return connection;
+        connection = open(file);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode=WAL");
+            statement.execute("PRAGMA synchronous=NORMAL");
+            statement.execute("""
+                    CREATE TABLE IF NOT EXISTS spawners (
+                        world TEXT NOT NULL,
+                        x INTEGER NOT NULL,
+                        y INTEGER NOT NULL,
+                        z INTEGER NOT NULL,
+                        chunk_x INTEGER NOT NULL,
+                        chunk_z INTEGER NOT NULL,
+                        type TEXT,
+                        durability INTEGER NOT NULL,
+                        max_durability INTEGER NOT NULL,
+                        flags INTEGER NOT NULL,
+                        display_name TEXT,
+                        nbt TEXT,
+                        PRIMARY KEY (world, x, y, z)
+                    )""");
+            statement.execute("CREATE INDEX IF NOT EXISTS spawners_chunk ON spawners (world, chunk_x, chunk_z)");
+            statement.execute("CREATE TABLE IF NOT EXISTS legacy (name TEXT PRIMARY KEY, yaml TEXT NOT NULL)");
+        }
+        return connection;
+    }
+
+    @Override
+    public SpawnerRegistry load(Logger logger) throws IOException {
+        final SpawnerRegistry registry = new SpawnerRegistry();
+        read(registry.sink(), logger);
+        return registry;
+    }
+
+    // 游标逐行读取，按世界排序可以走索引
+    @Override
+    public void read(Sink sink, Logger logger) throws IOException {
+        if(!file.isFile()) return;
+        try {
+            final Connection connection = connection();
+            try (Statement statement = connection.createStatement();
+                 ResultSet rows = statement.executeQuery("SELECT world, x, y, z, type, durability, max_durability, flags, display_name, nbt FROM spawners ORDER BY world")) {
+                while (rows.next()) {
+                    final UUID world;
+                    try {
+                        world = UUID.fromString(rows.getString(1));
+                    } catch (IllegalArgumentException e) {
+                        logger.warning("Skipping spawner with invalid world " + rows.getString(1));
+                        continue;
+                    }
+                    sink.accept(world, BlockPos.asLong(rows.getInt(2), rows.getInt(3), rows.getInt(4)), new SpawnerRecord(
+                            parseType(rows.getString(5), logger),
+                            rows.getInt(6),
+                            rows.getInt(7),
+                            rows.getInt(8),
+                            rows.getString(9),
+                            rows.getString(10)));
+                }
+            }
+            try (Statement statement = connection.createStatement();
+                 ResultSet rows = statement.executeQuery("SELECT name, yaml FROM legacy")) {
+                while (rows.next()) {
+                    final YamlConfiguration section = new YamlConfiguration();
+                    try {
+                        section.loadFromString(rows.getString(2));
+                    } catch (InvalidConfigurationException e) {
+                        logger.warning("Dropping unreadable legacy world " + rows.getString(1));
+                        continue;
+                    }
+                    sink.acceptUnresolved(rows.getString(1), section);
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("Could not read " + file, e);
+        }
+    }
+
+    @Override
+    public synchronized List<SpawnerRecord> loadChunk(ChunkKey chunk, Logger logger) throws IOException {
+        final List<SpawnerRecord> records = new ArrayList<>();
+        if(!file.isFile()) return records;
+        try {
+            if(readConnection == null) {
+                readConnection = open(file);
+                chunkQuery = readConnection.prepareStatement(
+                        "SELECT x, y, z, type, durability, max_durability, flags, display_name, nbt FROM spawners WHERE world = ? AND chunk_x = ? AND chunk_z = ?");
+            }
+            chunkQuery.setString(1, chunk.world().toString());
+            chunkQuery.setInt(2, chunk.x());
+            chunkQuery.setInt(3, chunk.z());
+            try (ResultSet rows = chunkQuery.executeQuery()) {
+                while (rows.next()) {
+                    final SpawnerRecord record = new SpawnerRecord(
+                            parseType(rows.getString(4), logger),
+                            rows.getInt(5),
+                            rows.getInt(6),
+                            rows.getInt(7),
+                            rows.getString(8),
+                            rows.getString(9));
+                    record.setLocation(chunk.world(), BlockPos.asLong(rows.getInt(1), rows.getInt(2), rows.getInt(3)));
+                    records.add(record);
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("Could not read " + file, e);
+        }
+        return records;
+    }
+
+    @Override
+    public void save(SpawnerRegistry.Snapshot snapshot) throws IOException {
+        try {
+            final Connection connection = connection();
+            connection.setAutoCommit(false);
+            try {
+                if(snapshot.isPartial()) {
+                    try (PreparedStatement delete = connection.prepareStatement("DELETE FROM spawners WHERE world = ? AND chunk_x = ? AND chunk_z = ?")) {
+                        for (ChunkKey chunk : snapshot.chunks()) {
+                            delete.setString(1, chunk.world().toString());
+                            delete.setInt(2, chunk.x());
+                            delete.setInt(3, chunk.z());
+                            delete.addBatch();
+                        }
+                        delete.executeBatch();
+                    }
+                } else {
+                    try (Statement statement = connection.createStatement()) {
+                        statement.executeUpdate("DELETE FROM spawners");
+                        statement.executeUpdate("DELETE FROM legacy");
+                    }
+                }
+                try (PreparedStatement insert = connection.prepareStatement(INSERT)) {
+                    int batched = 0;
+                    for (SpawnerRecord record : snapshot.records()) {
+                        bind(insert, record.getWorld(), record.getPos(), record);
+                        insert.addBatch();
+                        if(++batched % BATCH_SIZE == 0) insert.executeBatch();
+                    }
+                    insert.executeBatch();
+                }
+                if(!snapshot.isPartial() && !snapshot.unresolved().isEmpty()) {
+                    try (PreparedStatement insert = connection.prepareStatement(INSERT_LEGACY)) {
+                        for (var entry : snapshot.unresolved().entrySet()) {
+                            bindLegacy(insert, entry.getKey(), entry.getValue());
+                            insert.addBatch();
+                        }
+                        insert.executeBatch();
+                    }
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Could not write " + file, e);
+        }
+    }
+
+    // 整个迁移在一个事务中完成，提交前中断不会留下任何行
+    @Override
+    public BulkWriter openWriter() throws IOException {
+        final PreparedStatement insert;
+        final PreparedStatement insertLegacy;
+        try {
+            final Connection connection = connection();
+            connection.setAutoCommit(false);
+            insert = connection.prepareStatement(INSERT);
+            insertLegacy = connection.prepareStatement(INSERT_LEGACY);
+        } catch (SQLException e) {
+            close();
+            throw new IOException("Could not open " + file, e);
+        }
+        return new BulkWriter() {
+            private int batched;
+            private boolean committed;
+
+            @Override
+            public void accept(UUID world, long pos, SpawnerRecord record) throws IOException {
+                try {
+                    bind(insert, world, pos, record);
+                    insert.addBatch();
+                    if(++batched % BATCH_SIZE == 0) insert.executeBatch();
+                } catch (SQLException e) {
+                    throw new IOException("Could not write " + file, e);
+                }
+            }
+
+            @Override
+            public void acceptUnresolved(String name, ConfigurationSection section) throws IOException {
+                try {
+                    bindLegacy(insertLegacy, name, section.getValues(true));
+                    insertLegacy.executeUpdate();
+                } catch (SQLException e) {
+                    throw new IOException("Could not write " + file, e);
+                }
+            }
+
+            @Override
+            public void commit() throws IOException {
+                try {
+                    insert.executeBatch();
+                    connection.commit();
+                    committed = true;
+                } catch (SQLException e) {
+                    throw new IOException("Could not write " + file, e);
+                }
+            }
+
+            @Override
+            public void close() {
+                try {
+                    insert.close();
+                    insertLegacy.close();
+                    if(!committed) connection.rollback();
+                    connection.setAutoCommit(true);
+                } catch (SQLException ignored) {
+                }
+            }
+        };
+    }
+
+    private static void bind(PreparedStatement insert, UUID world, long pos, SpawnerRecord record) throws SQLException {
+        final int x = BlockPos.getX(pos);
+        final int z = BlockPos.getZ(pos);
+        insert.setString(1, world.toString());
+        insert.setInt(2, x);
+        insert.setInt(3, BlockPos.getY(pos));
+        insert.setInt(4, z);
+        insert.setInt(5, x >> 4);
+        insert.setInt(6, z >> 4);
+        insert.setString(7, record.getType() == null ? null : record.getType().name());
+        insert.setInt(8, record.getDurability());
+        insert.setInt(9, record.getMaxDurability());
+        insert.setInt(10, record.getFlags());
+        insert.setString(11, record.getDisplayName());
+        insert.setString(12, record.getNbt());
+    }
+
+    private static void bindLegacy(PreparedStatement insert, String name, Map<String, Object> values) throws SQLException {
+        final YamlConfiguration section = new YamlConfiguration();
+        values.forEach((path, value) -> {
+            if(!(value instanceof ConfigurationSection)) section.set(path, value);
+        });
+        insert.setString(1, name);
+        insert.setString(2, section.saveToString());
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Connection open : new Connection[]{readConnection, connection}) {
+            if(open == null) continue;
+            try {
+                open.close();
+            } catch (SQLException ignored) {
+            }
+        }
+        readConnection = null;
+        chunkQuery = null;
+        connection = null;
+    }
+
+    private static EntityType parseType(String name, Logger logger) {
+        if(name == null) return null;
+        try {
+            return EntityType.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            logger.warning("Unknown entity type " + name);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,535 @@
+package com.hyun.betterspawner.storage;
+
+import com.hyun.betterspawner.utils.BlockPos;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.EntityType;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.Construct;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+import org.yaml.snakeyaml.emitter.Emitter;
+import org.yaml.snakeyaml.events.*;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.ScalarNode;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Stores the registry in {@code spawnerData.yml}.
+ */
+public class YamlSpawnerStorage implements SpawnerStorage {
+    // 不需要引号的纯量，且不会被解析为数字、布尔值或 null
+    private static final Pattern PLAIN = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*|-?[0-9]+(,-?[0-9]+){2}|[0-9a-f]{8}(-[0-9a-f]{4}){3}-[0-9a-f]{12}");
+    private static final Set<String> RESERVED = Set.of("true", "false", "yes", "no", "on", "off", "null", "y", "n", "~");
+
+    private final File file;
+    private final AtomicFile data;
+
+    /**
+     * @param file the data file
+     * @param generations how many previous versions are kept, see {@link AtomicFile}
+     */
+    public YamlSpawnerStorage(File file, int generations) {
+        this.file = file;
+        this.data = new AtomicFile(file, generations, YamlSpawnerStorage::parseEvents);
+    }
+
+    @Override
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public SpawnerRegistry load(Logger logger) throws IOException {
+        // 每次尝试都从新的注册表开始，读取失败回退到旧版本时不会混入部分数据
+        final SpawnerRegistry registry = data.read(in -> {
+            final SpawnerRegistry loaded = new SpawnerRegistry();
+            read(in, loaded.sink(), logger);
+            return loaded;
+        }, logger);
+        return registry == null ? new SpawnerRegistry() : registry;
+    }
+
+    @Override
+    public void read(Sink sink, Logger logger) throws IOException {
+        final boolean[] started = {false};
+        final Sink tracked = new Sink() {
+            @Override
+            public void accept(UUID world, long pos, SpawnerRecord record) throws IOException {
+                started[0] = true;
+                sink.accept(world, pos, record);
+            }
+
+            @Override
+            public void acceptUnresolved(String name, ConfigurationSection section) throws IOException {
+                started[0] = true;
+                sink.acceptUnresolved(name, section);
+            }
+        };
+        data.read(in -> {
+            try {
+                read(in, tracked, logger);
+            } catch (IOException | RuntimeException e) {
+                if(started[0]) throw new AtomicFile.PartialReadException(e);
+                throw e;
+            }
+            return Boolean.TRUE;
+        }, logger);
+    }
+
+    private static void read(InputStream in, Sink sink, Logger logger) throws IOException {
+        final Reader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+        final Iterator<Event> events;
+        final Scalars scalars = new Scalars();
+        try {
+            events = new Yaml(loaderOptions()).parse(reader).iterator();
+            // StreamStart, DocumentStart
+            Event event = next(events);
+            while (!(event instanceof MappingStartEvent)) {
+                if(event instanceof StreamEndEvent || event instanceof DocumentEndEvent) return;
+                event = next(events);
+            }
+
+            while (!((event = next(events)) instanceof MappingEndEvent)) {
+                final String worldKey = scalar(event);
+                final Event value = next(events);
+                if(!(value instanceof MappingStartEvent)) {
+                    skip(events, value);
+                    continue;
+                }
+
+                UUID world;
+                try {
+                    world = UUID.fromString(worldKey);
+                } catch (IllegalArgumentException e) {
+                    world = resolveWorld(worldKey);
+                }
+                if(world == null) {
+                    logger.warning("Could not find the uid of world " + worldKey + ", its spawners are kept but not managed");
+                    @SuppressWarnings("unchecked")
+                    final Map<String, Object> values = (Map<String, Object>) readValue(events, value, scalars);
+                    sink.acceptUnresolved(worldKey, legacySection(values));
+                    continue;
+                }
+                readWorld(events, world, worldKey, sink, scalars, logger);
+            }
+        } catch (RuntimeException e) {
+            // SnakeYAML 的解析错误都是运行时异常
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    private static void readWorld(Iterator<Event> events, UUID world, String worldKey, Sink sink, Scalars scalars, Logger logger) throws IOException {
+        final Map<String, Object> fields = new HashMap<>();
+        Event event;
+        while (!((event = next(events)) instanceof MappingEndEvent)) {
+            final String posKey = scalar(event);
+            final Event value = next(events);
+            if(!(value instanceof MappingStartEvent)) {
+                skip(events, value);
+                continue;
+            }
+
+            fields.clear();
+            while (!((event = next(events)) instanceof MappingEndEvent)) {
+                final String key = scalar(event);
+                final Event field = next(events);
+                if(field instanceof ScalarEvent scalar) {
+                    fields.put(key, scalars.resolve(scalar));
+                } else {
+                    skip(events, field);
+                }
+            }
+
+            final long pos;
+            try {
+                pos = BlockPos.fromString(posKey);
+            } catch (IllegalArgumentException e) {
+                logger.warning("Skipping spawner with invalid position " + worldKey + "." + posKey);
+                continue;
+            }
+            sink.accept(world, pos, toRecord(fields, worldKey + "." + posKey, logger));
+        }
+    }
+
+    // 缺少的字段取旧版的默认值：耐久为 0，最大耐久等于耐久，标记为 0
+    private static SpawnerRecord toRecord(Map<String, Object> fields, String location, Logger logger) {
+        final int durability = toInt(fields.get("durability"), 0, "durability", location, logger);
+        EntityType type = null;
+        final String typeName = toString(fields.get("type"));
+        if(typeName != null) {
+            try {
+                type = EntityType.valueOf(typeName);
+            } catch (IllegalArgumentException e) {
+                logger.warning("Unknown entity type " + typeName + " of spawner " + location);
+            }
+        }
+        return new SpawnerRecord(type,
+                durability,
+                toInt(fields.get("maxDurability"), durability, "maxDurability", location, logger),
+                toInt(fields.get("flags"), 0, "flags", location, logger),
+                toString(fields.get("displayName")),
+                toString(fields.get("nbt")));
+    }
+
+    private static int toInt(@Nullable Object value, int def, String field, String location, Logger logger) {
+        if(value == null) return def;
+        // SnakeYAML 只在超出 int 范围时构造 Long 或 BigInteger
+        if(value instanceof Integer number) return number;
+        // 与 ConfigurationSection.getInt 一样接受加了引号的数字
+        if(value instanceof String string) {
+            try {
+                return Integer.parseInt(string.trim());
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        logger.warning("Invalid " + field + " '" + value + "' of spawner " + location + ", using " + def);
+        return def;
+    }
+
+    // 与 ConfigurationSection.getString 相同，非字符串的纯量取其字符串形式
+    private static @Nullable String toString(@Nullable Object value) {
+        return value == null ? null : value.toString();
+    }
+
+    @Override
+    public void save(SpawnerRegistry.Snapshot snapshot) throws IOException {
+        // 只按世界分组引用，不复制记录
+        final Map<UUID, List<SpawnerRecord>> byWorld = new LinkedHashMap<>();
+        for (SpawnerRecord record : snapshot.records()) {
+            byWorld.computeIfAbsent(record.getWorld(), k -> new ArrayList<>()).add(record);
+        }
+
+        data.write(out -> {
+            final DocumentWriter document = new DocumentWriter(out);
+            for (Map.Entry<UUID, List<SpawnerRecord>> entry : byWorld.entrySet()) {
+                for (SpawnerRecord record : entry.getValue()) {
+                    document.record(entry.getKey(), record.getPos(), record);
+                }
+            }
+            snapshot.unresolved().forEach(document::unresolved);
+            document.finish();
+        });
+    }
+
+    @Override
+    public BulkWriter openWriter() throws IOException {
+        final AtomicFile.Output out = data.startWrite();
+        final DocumentWriter document;
+        try {
+            document = new DocumentWriter(out);
+        } catch (IOException | RuntimeException e) {
+            out.close();
+            throw e;
+        }
+        return new BulkWriter() {
+            @Override
+            public void accept(UUID world, long pos, SpawnerRecord record) throws IOException {
+                document.record(world, pos, record);
+            }
+
+            @Override
+            public void acceptUnresolved(String name, ConfigurationSection section) {
+                document.unresolved(name, section.getValues(true));
+            }
+
+            @Override
+            public void commit() throws IOException {
+                document.finish();
+                out.commit();
+            }
+
+            @Override
+            public void close() {
+                out.close();
+            }
+        };
+    }
+
+    // 逐条输出记录，同一世界的记录必须连续到达，无法解析的世界在最后写入
+    private static class DocumentWriter {
+        private final Writer writer;
+        private final Emitter emitter;
+        private final Set<UUID> finished = new HashSet<>();
+        private final Map<String, Map<String, Object>> unresolved = new LinkedHashMap<>();
+        private UUID world;
+
+        DocumentWriter(OutputStream out) throws IOException {
+            writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+            emitter = new Emitter(writer, dumperOptions());
+            emitter.emit(new StreamStartEvent(null, null));
+            emitter.emit(new DocumentStartEvent(null, null, false, null, null));
+            emitter.emit(mappingStart());
+        }
+
+        void record(UUID world, long pos, SpawnerRecord record) throws IOException {
+            if(!world.equals(this.world)) {
+                if(this.world != null) emitter.emit(new MappingEndEvent(null, null));
+                if(!finished.add(world)) throw new IOException("The records of world " + world + " are not grouped together");
+                this.world = world;
+                emitter.emit(string(world.toString()));
+                emitter.emit(mappingStart());
+            }
+            emitter.emit(string(BlockPos.toString(pos)));
+            writeRecord(emitter, record);
+        }
+
+        void unresolved(String name, Map<String, Object> values) {
+            unresolved.put(name, values);
+        }
+
+        void finish() throws IOException {
+            if(world != null) emitter.emit(new MappingEndEvent(null, null));
+            for (Map.Entry<String, Map<String, Object>> entry : unresolved.entrySet()) {
+                emitter.emit(string(entry.getKey()));
+                writeValue(emitter, unflatten(entry.getValue()));
+            }
+            emitter.emit(new MappingEndEvent(null, null));
+            emitter.emit(new DocumentEndEvent(null, null, false));
+            emitter.emit(new StreamEndEvent(null, null));
+            writer.flush();
+        }
+    }
+
+    // 字段顺序与旧版 spawnerData.yml 相同，null 和为 0 的标记省略
+    private static void writeRecord(Emitter emitter, SpawnerRecord record) throws IOException {
+        emitter.emit(mappingStart());
+        if(record.getType() != null) {
+            emitter.emit(string("type"));
+            emitter.emit(string(record.getType().toString()));
+        }
+        if(record.getDisplayName() != null) {
+            emitter.emit(string("displayName"));
+            emitter.emit(string(record.getDisplayName()));
+        }
+        emitter.emit(string("durability"));
+        emitter.emit(number(record.getDurability()));
+        emitter.emit(string("maxDurability"));
+        emitter.emit(number(record.getMaxDurability()));
+        if(record.getFlags() != 0) {
+            emitter.emit(string("flags"));
+            emitter.emit(number(record.getFlags()));
+        }
+        if(record.getNbt() != null) {
+            emitter.emit(string("nbt"));
+            emitter.emit(string(record.getNbt()));
+        }
+        emitter.emit(new MappingEndEvent(null, null));
+    }
+
+    // getValues(true) 得到的是扁平路径，重新组装成嵌套结构
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> unflatten(Map<String, Object> values) {
+        final Map<String, Object> root = new LinkedHashMap<>();
+        values.forEach((path, value) -> {
+            if(value instanceof ConfigurationSection) return;
+            final String[] parts = path.split("\\.");
+            Map<String, Object> node = root;
+            for (int i = 0; i < parts.length - 1; i++) {
+                node = (Map<String, Object>) node.computeIfAbsent(parts[i], k -> new LinkedHashMap<String, Object>());
+            }
+            node.put(parts[parts.length - 1], value);
+        });
+        return root;
+    }
+
+    private static void writeValue(Emitter emitter, @Nullable Object value) throws IOException {
+        if(value instanceof Map<?, ?> map) {
+            emitter.emit(mappingStart());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                emitter.emit(string(String.valueOf(entry.getKey())));
+                writeValue(emitter, entry.getValue());
+            }
+            emitter.emit(new MappingEndEvent(null, null));
+        } else if(value instanceof Collection<?> list) {
+            emitter.emit(new SequenceStartEvent(null, null, true, null, null, DumperOptions.FlowStyle.BLOCK));
+            for (Object element : list) {
+                writeValue(emitter, element);
+            }
+            emitter.emit(new SequenceEndEvent(null, null));
+        } else if(value instanceof Number || value instanceof Boolean) {
+            emitter.emit(new ScalarEvent(null, null, new ImplicitTuple(true, false), value.toString(), null, null, DumperOptions.ScalarStyle.PLAIN));
+        } else if(value == null) {
+            emitter.emit(new ScalarEvent(null, null, new ImplicitTuple(true, false), "null", null, null, DumperOptions.ScalarStyle.PLAIN));
+        } else {
+            emitter.emit(string(value.toString()));
+        }
+    }
+
+    private static MappingStartEvent mappingStart() {
+        return new MappingStartEvent(null, null, true, null, null, DumperOptions.FlowStyle.BLOCK);
+    }
+
+    private static ScalarEvent number(int value) {
+        return new ScalarEvent(null, null, new ImplicitTuple(true, false), Integer.toString(value), null, null, DumperOptions.ScalarStyle.PLAIN);
+    }
+
+    // 可能被误解析的字符串一律加引号
+    private static ScalarEvent string(String value) {
+        if(PLAIN.matcher(value).matches() && !RESERVED.contains(value.toLowerCase())) {
+            return new ScalarEvent(null, null, new ImplicitTuple(true, false), value, null, null, DumperOptions.ScalarStyle.PLAIN);
+        }
+        return new ScalarEvent(null, null, new ImplicitTuple(false, true), value, null, null, DumperOptions.ScalarStyle.DOUBLE_QUOTED);
+    }
+
+    // 仅用于无法解析的世界，构造与 YamlConfiguration 相同的值类型
+    private static @Nullable Object readValue(Iterator<Event> events, Event event, Scalars scalars) {
+        if(event instanceof MappingStartEvent) {
+            final Map<String, Object> map = new LinkedHashMap<>();
+            Event key;
+            while (!((key = next(events)) instanceof MappingEndEvent)) {
+                map.put(scalar(key), readValue(events, next(events), scalars));
+            }
+            return map;
+        }
+        if(event instanceof SequenceStartEvent) {
+            final List<Object> list = new ArrayList<>();
+            Event element;
+            while (!((element = next(events)) instanceof SequenceEndEvent)) {
+                list.add(readValue(events, element, scalars));
+            }
+            return list;
+        }
+        if(event instanceof ScalarEvent scalar) return scalars.resolve(scalar);
+        return null;
+    }
+
+    // 按 YAML 的隐式标签解析纯量，与 YamlConfiguration 读到的值相同
+    private static class Scalars extends SafeConstructor {
+        private final Resolver resolver = new Resolver();
+
+        Scalars() {
+            super(new LoaderOptions());
+        }
+
+        @Nullable Object resolve(ScalarEvent event) {
+            final String value = event.getValue();
+            final Tag tag = event.getTag() == null || event.getTag().equals("!")
+                    ? resolver.resolve(NodeId.scalar, value, event.getImplicit().canOmitTagInPlainScalar())
+                    : new Tag(event.getTag());
+            final Construct construct = yamlConstructors.containsKey(tag) ? yamlConstructors.get(tag) : yamlConstructors.get(null);
+            try {
+                return construct.construct(new ScalarNode(tag, value, null, null, event.getScalarStyle()));
+            } catch (RuntimeException e) {
+                // 标签与内容不符时保留原文，由调用方报告
+                return value;
+            }
+        }
+    }
+
+    private static void skip(Iterator<Event> events, Event event) {
+        int depth = event instanceof MappingStartEvent || event instanceof SequenceStartEvent ? 1 : 0;
+        while (depth > 0) {
+            final Event next = next(events);
+            if(next instanceof MappingStartEvent || next instanceof SequenceStartEvent) depth++;
+            else if(next instanceof MappingEndEvent || next instanceof SequenceEndEvent) depth--;
+        }
+    }
+
+    private static Event next(Iterator<Event> events) {
+        if(!events.hasNext()) throw new IllegalStateException("Unexpected end of document");
+        return events.next();
+    }
+
+    private static String scalar(Event event) {
+        if(event instanceof ScalarEvent scalar) return scalar.getValue();
+        throw new IllegalStateException("Expected a key but found " + event);
+    }
+
+    private static LoaderOptions loaderOptions() {
+        final LoaderOptions options = new LoaderOptions();
+        try {
+            // 与 YamlConfiguration 一样不限制文件大小，旧版 SnakeYAML 没有这个限制
+            options.setCodePointLimit(Integer.MAX_VALUE);
+        } catch (NoSuchMethodError ignored) {
+        }
+        return options;
+    }
+
+    private static DumperOptions dumperOptions() {
+        final DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        options.setIndent(2);
+        options.setWidth(Integer.MAX_VALUE);
+        options.setAllowUnicode(true);
+        return options;
+    }
+
+    // 解析失败时抛出异常以便回退到上一个版本，而不是像 loadConfiguration 那样返回空配置
+    // 只检查语法，整个文件都能解析时返回
+    private static Boolean parseEvents(InputStream in) throws IOException {
+        final Reader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+        try {
+            for (Event ignored : new Yaml(loaderOptions()).parse(reader)) {
+            }
+        } catch (RuntimeException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        return Boolean.TRUE;
+    }
+
+    // 旧版世界名可能含有 .，只作为原始的键读写，不能当作 ConfigurationSection 的路径
+    private static ConfigurationSection legacySection(Map<?, ?> values) {
+        return new YamlConfiguration().createSection("world", values);
+    }
+
+    /**
+     * Reads a document holding only the raw data of unresolved legacy worlds.
+     *
+     * @param in the document
+     * @return the data by world name
+     * @throws IOException if the document cannot be parsed
+     */
+    static Map<String, ConfigurationSection> readLegacy(InputStream in) throws IOException {
+        final Object root;
+        try {
+            root = new Yaml(loaderOptions()).load(new InputStreamReader(in, StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        final Map<String, ConfigurationSection> legacy = new LinkedHashMap<>();
+        if(root instanceof Map<?, ?> worlds) {
+            worlds.forEach((name, values) -> {
+                if(values instanceof Map<?, ?> section) legacy.put(String.valueOf(name), legacySection(section));
+            });
+        }
+        return legacy;
+    }
+
+    /**
+     * Writes the raw data of unresolved legacy worlds, see {@link #readLegacy(InputStream)}.
+     *
+     * @param unresolved the values by world name, as in {@link SpawnerRegistry.Snapshot#unresolved()}
+     * @return the document
+     */
+    static byte[] writeLegacy(Map<String, Map<String, Object>> unresolved) {
+        final Map<String, Object> root = new LinkedHashMap<>();
+        unresolved.forEach((name, values) -> root.put(name, unflatten(values)));
+        return new Yaml(dumperOptions()).dump(root).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // 插件在 onLoad 时世界尚未加载，直接读取世界目录下的 uid.dat，后台加载时不访问世界列表
+    private static @Nullable UUID resolveWorld(String name) {
+        final World loaded = Bukkit.isPrimaryThread() ? Bukkit.getWorld(name) : null;
+        if(loaded != null) return loaded.getUID();
+
+        final File uidFile = new File(new File(Bukkit.getWorldContainer(), name), "uid.dat");
+        if(!uidFile.isFile()) return null;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(uidFile))) {
+            return new UUID(in.readLong(), in.readLong());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.hyun.betterspawner.utils;
+
+/**
+ * Packs block coordinates into a long, bit compatible with vanilla's {@code BlockPos.asLong}.
+ */
+public class BlockPos {
+    private static final int PACKED_X_LENGTH = 26;
+    private static final int PACKED_Z_LENGTH = 26;
+    private static final int PACKED_Y_LENGTH = 12;
+    private static final long PACKED_X_MASK = (1L << PACKED_X_LENGTH) - 1L;
+    private static final long PACKED_Y_MASK = (1L << PACKED_Y_LENGTH) - 1L;
+    private static final long PACKED_Z_MASK = (1L << PACKED_Z_LENGTH) - 1L;
+    private static final int Z_OFFSET = PACKED_Y_LENGTH;
+    private static final int X_OFFSET = PACKED_Y_LENGTH + PACKED_Z_LENGTH;
+
+    public static long asLong(int x, int y, int z) {
+        return ((long) x & PACKED_X_MASK) << X_OFFSET | ((long) y & PACKED_Y_MASK) | ((long) z & PACKED_Z_MASK) << Z_OFFSET;
+    }
+
+    public static int getX(long packed) {
+        return (int) (packed << 64 - X_OFFSET - PACKED_X_LENGTH >> 64 - PACKED_X_LENGTH);
+    }
+
+    public static int getY(long packed) {
+        return (int) (packed << 64 - PACKED_Y_LENGTH >> 64 - PACKED_Y_LENGTH);
+    }
+
+    public static int getZ(long packed) {
+        return (int) (packed << 64 - Z_OFFSET - PACKED_Z_LENGTH >> 64 - PACKED_Z_LENGTH);
+    }
+
+    /**
+     * Packs chunk coordinates into a single long.
+     *
+     * @param chunkX the chunk x
+     * @param chunkZ the chunk z
+     * @return the chunk key
+     */
+    public static long chunkKey(int chunkX, int chunkZ) {
+        return (long) chunkX << 32 | chunkZ & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Gets the key of the chunk a packed position lies in, see {@link #chunkKey(int, int)}.
+     *
+     * @param packed the packed position
+     * @return the chunk key
+     */
+    public static long chunkKeyOf(long packed) {
+        return chunkKey(getX(packed) >> 4, getZ(packed) >> 4);
+    }
+
+    /**
+     * Formats a packed position as {@code x,y,z}, the key format used by the spawner data file.
+     *
+     * @param packed the packed position
+     * @return the formatted position
+     */
+    public static String toString(long packed) {
+        return getX(packed) + "," + getY(packed) + "," + getZ(packed);
+    }
+
+    /**
+     * Parses a position in the {@code x,y,z} format.
+     *
+     * @param s the formatted position
+     * @return the packed position
+     * @throws IllegalArgumentException if the string is not a valid position
+     */
+    public static long fromString(String s) {
+        final String[] split = s.split(",");
+        if(split.length != 3) throw new IllegalArgumentException("Invalid block position: " + s);
+        return asLong(Integer.parseInt(split[0].trim()), Integer.parseInt(split[1].trim()), Integer.parseInt(split[2].trim()));
+    }
+}
@@ -1,9 +1,9 @@
 package com.hyun.betterspawner.utils;
 
 import com.hyun.betterspawner.BetterSpawner;
+import com.hyun.betterspawner.storage.SpawnerRecord;
 import org.bukkit.Material;
 import org.bukkit.block.CreatureSpawner;
-import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.EntityType;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.BlockStateMeta;
@@ -12,20 +12,75 @@ import org.bukkit.persistence.PersistentDataType;
 import javax.annotation.Nonnull;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Objects;
 
 public class ItemUtil {
-    public static String getSpawnerDisplayName(BetterSpawner plugin, @Nonnull ConfigurationSection spawnerData) {
-        return spawnerData.getString("displayName", plugin.i18n((spawnerData.getInt("flags") & 1) == 0 ? "display-name": "display-name-deny-break"));
+    private static final int PROGRESS_BAR_LENGTH = 16;
+    private static final int PROTOTYPE_CACHE_SIZE = 256;
+
+    private static final String[] PROGRESS_BARS = new String[PROGRESS_BAR_LENGTH + 1];
+    static {
+        for (int i = 0; i <= PROGRESS_BAR_LENGTH; i++) {
+            PROGRESS_BARS[i] = "§a" + "■".repeat(i) + "§7" + "□".repeat(PROGRESS_BAR_LENGTH - i);
+        }
+    }
+
+    private record PrototypeKey(EntityType type, int durability, int maxDurability, int flags, String displayName, String nbt) {
+    }
+
+    // 按访问顺序淘汰的 LRU 缓存，只在主线程访问
+    private static final Map<PrototypeKey, ItemStack> PROTOTYPES = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<PrototypeKey, ItemStack> eldest) {
+            return size() > PROTOTYPE_CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Drops all cached spawner items, must be called whenever the config or messages are reloaded.
+     */
+    public static void invalidateCache() {
+        PROTOTYPES.clear();
     }
 
-    public static ItemStack getSpawnerDropItem(BetterSpawner plugin, EntityType type, @Nonnull ConfigurationSection spawnerData) {
+    public static String getSpawnerDisplayName(BetterSpawner plugin, @Nonnull SpawnerRecord spawnerData) {
+        final String displayName = spawnerData.getDisplayName();
+        if(displayName != null) return displayName;
+        return plugin.i18n(spawnerData.isDenyBreak() ? "display-name-deny-break": "display-name");
+    }
+
+    public static ItemStack getSpawnerDropItem(BetterSpawner plugin, EntityType type, @Nonnull SpawnerRecord spawnerData) {
         return getSpawnerDropItem(plugin, type, spawnerData, 1);
     }
 
-    public static ItemStack getSpawnerDropItem(BetterSpawner plugin, EntityType type, @Nonnull ConfigurationSection spawnerData, int amount) {
-        ItemStack item = new ItemStack(Material.SPAWNER, amount);
+    /**
+     * Gets the item a spawner drops.
+     * <p>
+     * Items are built once per distinct spawner state and cached, callers receive a copy.
+     *
+     * @param plugin the plugin
+     * @param type the spawned entity type
+     * @param spawnerData the spawner state
+     * @param amount the stack size
+     * @return a new spawner item
+     */
+    public static ItemStack getSpawnerDropItem(BetterSpawner plugin, EntityType type, @Nonnull SpawnerRecord spawnerData, int amount) {
+        final PrototypeKey key = new PrototypeKey(type, spawnerData.getDurability(), spawnerData.getMaxDurability(),
+                spawnerData.getFlags(), spawnerData.getDisplayName(), spawnerData.getNbt());
+        ItemStack prototype = PROTOTYPES.get(key);
+        if(prototype == null) {
+            prototype = createSpawnerItem(plugin, type, spawnerData);
+            PROTOTYPES.put(key, prototype);
+        }
+
+        final ItemStack item = prototype.clone();
+        item.setAmount(amount);
+        return item;
+    }
+
+    private static ItemStack createSpawnerItem(BetterSpawner plugin, EntityType type, SpawnerRecord spawnerData) {
+        ItemStack item = new ItemStack(Material.SPAWNER, 1);
         BlockStateMeta meta = (BlockStateMeta) item.getItemMeta();
         assert meta != null;
 
@@ -35,25 +90,31 @@ public class ItemUtil {
         meta.setBlockState(spawner);
         item.setItemMeta(meta);
 
-        final int durability = spawnerData.getInt("durability");
-        final int maxDurability = spawnerData.getInt("maxDurability", durability);
-        final int flags = spawnerData.getInt("flags", plugin.getConfig().getInt("drop-flags"));
+        final int durability = spawnerData.getDurability();
+        final int maxDurability = spawnerData.getMaxDurability();
+        final int flags = spawnerData.getFlags();
+        final String nbt = spawnerData.getNbt();
 
         var container = meta.getPersistentDataContainer();
         container.set(plugin.keyDurability, PersistentDataType.INTEGER, durability);
         container.set(plugin.keyMaxDurability, PersistentDataType.INTEGER, maxDurability);
         container.set(plugin.keyFlags, PersistentDataType.INTEGER, flags);
-        if(spawnerData.contains("nbt"))
-            container.set(plugin.keyNBT, PersistentDataType.STRING, Objects.requireNonNull(spawnerData.getString("nbt")));
+        if(nbt != null)
+            container.set(plugin.keyNBT, PersistentDataType.STRING, nbt);
 
-        final int percent = (int) (16 * (double) durability / (double)maxDurability);
-        final boolean denyBreak = (flags & 1) != 0;
-        final boolean denyChange = (flags & (1 << 1)) != 0;
+        final int percent = Math.max(0, Math.min(PROGRESS_BAR_LENGTH, (int) (PROGRESS_BAR_LENGTH * (double) durability / (double)maxDurability)));
+        final boolean denyBreak = spawnerData.isDenyBreak();
+        final boolean denyChange = spawnerData.isDenyChange();
 
         var lore = new ArrayList<String>();
         var attrs = new ArrayList<String>();
 
-        lore.add(plugin.i18n("lore-type", Map.of("type", spawnerData.contains("nbt") ? "CUSTOM" : type.toString())));
+        final String typeName = nbt != null ? "CUSTOM" : type.toString();
+        lore.add(plugin.i18n.template("lore-type").render((sb, name) -> {
+            if(!name.equals("type")) return false;
+            sb.append(typeName);
+            return true;
+        }));
         lore.add("");
 
         if(!denyBreak)
@@ -67,9 +128,18 @@ public class ItemUtil {
             lore.add("");
         }
 
-        lore.addAll(Arrays.stream(plugin.i18n(maxDurability < 0 ? "lore-durability-unlimited": "lore-durability", Map.of("durability", String.valueOf(durability),
-                "maxDurability", String.valueOf(maxDurability),
-                "progress-bar", "§a" + "■".repeat(percent) + "§7" + "□".repeat(16 - percent))).split("\n")).toList());
+        final String durabilityLore = plugin.i18n.template(maxDurability < 0 ? "lore-durability-unlimited": "lore-durability").render((sb, name) -> {
+            switch (name) {
+                case "durability" -> sb.append(durability);
+                case "maxDurability" -> sb.append(maxDurability);
+                case "progress-bar" -> sb.append(PROGRESS_BARS[percent]);
+                default -> {
+                    return false;
+                }
+            }
+            return true;
+        });
+        lore.addAll(Arrays.asList(durabilityLore.split("\n")));
 
         meta.setLore(lore);
         meta.setDisplayName(getSpawnerDisplayName(plugin, spawnerData));
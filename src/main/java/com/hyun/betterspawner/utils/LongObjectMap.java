@@ -0,0 +1,156 @@
+package com.hyun.betterspawner.utils;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash map with primitive long keys, null values are not supported.
+ *
+ * @param <V> the type of the values
+ */
+public class LongObjectMap<V> {
+    private static final float LOAD_FACTOR = 0.5f;
+
+    @FunctionalInterface
+    public interface Consumer<V> {
+        void accept(long key, V value);
+    }
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+
+    public LongObjectMap() {
+        this(16);
+    }
+
+    public LongObjectMap(int expected) {
+        final int capacity = Math.max(4, Integer.highestOneBit(Math.max(1, (int) (expected / LOAD_FACTOR)) - 1) << 1);
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int mix(long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ h >>> 32);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int i = mix(key) & mask;
+        Object value;
+        while ((value = values[i]) != null) {
+            if(keys[i] == key) return (V) value;
+            i = i + 1 & mask;
+        }
+        return null;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Associates the value with the key.
+     *
+     * @param key the key
+     * @param value the value, must not be null
+     * @return the previous value, or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if(value == null) throw new IllegalArgumentException("value cannot be null");
+        int i = mix(key) & mask;
+        Object current;
+        while ((current = values[i]) != null) {
+            if(keys[i] == key) {
+                values[i] = value;
+                return (V) current;
+            }
+            i = i + 1 & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if(++size > (mask + 1) * LOAD_FACTOR) rehash((mask + 1) << 1);
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int i = mix(key) & mask;
+        Object current;
+        while ((current = values[i]) != null) {
+            if(keys[i] == key) {
+                shiftKeys(i);
+                size--;
+                return (V) current;
+            }
+            i = i + 1 & mask;
+        }
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Calls the consumer for every entry. The map must not be modified while iterating.
+     *
+     * @param consumer the consumer
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super V> consumer) {
+        final long[] keys = this.keys;
+        final Object[] values = this.values;
+        for (int i = 0; i < values.length; i++) {
+            if(values[i] != null) consumer.accept(keys[i], (V) values[i]);
+        }
+    }
+
+    // 线性探测的删除：把后面同一探测链上的元素往前挪，避免留下墓碑
+    private void shiftKeys(int pos) {
+        int last;
+        long key;
+        while (true) {
+            pos = (last = pos) + 1 & mask;
+            while (true) {
+                if(values[pos] == null) {
+                    values[last] = null;
+                    return;
+                }
+                key = keys[pos];
+                final int slot = mix(key) & mask;
+                if(last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos) break;
+                pos = pos + 1 & mask;
+            }
+            keys[last] = key;
+            values[last] = values[pos];
+        }
+    }
+
+    private void rehash(int capacity) {
+        final long[] oldKeys = keys;
+        final Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if(oldValues[i] == null) continue;
+            int j = mix(oldKeys[i]) & mask;
+            while (values[j] != null) j = j + 1 & mask;
+            keys[j] = oldKeys[i];
+            values[j] = oldValues[i];
+        }
+    }
+}
@@ -6,7 +6,8 @@ import org.bukkit.entity.Entity;
 import org.bukkit.inventory.ItemStack;
 
 import java.io.*;
-import java.lang.reflect.Field;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.Arrays;
@@ -29,32 +30,45 @@ import java.util.zip.GZIPOutputStream;
  */
 public class NBTUtil {
 
-    public static final Class<?> TAG_COMPOUND_CLASS = ReflectUtil.getNMSClass("NBTTagCompound", "net.minecraft.nbt").getOrThrow();
+    public static final Class<?> TAG_COMPOUND_CLASS = ReflectUtil.getNMSClass("NBTTagCompound", "CompoundTag", "net.minecraft.nbt").getOrThrow();
 
-    private static final Method AS_NMS_COPY = ReflectUtil.getMethod(ReflectUtil.getCBClass("inventory.CraftItemStack").getOrThrow(), "asNMSCopy", ItemStack.class).getOrThrow();
-    private static final Field ITEM_STACK_TAG = ReflectUtil.getDeclaredFieldByType(ReflectUtil.getNMSClass("ItemStack", "net.minecraft.world.item").getOrThrow(), TAG_COMPOUND_CLASS, 0, true).getOrThrow();
-    private static final Method AS_BUKKIT_COPY = ReflectUtil.getMethod(ReflectUtil.getCBClass("inventory.CraftItemStack").getOrThrow(), "asBukkitCopy", ReflectUtil.getNMSClass("ItemStack", "net.minecraft.world.item").getOrThrow()).getOrThrow();
+    private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType NBT_SAVER = MethodType.methodType(Object.class, Object.class, Object.class);
+    private static final MethodType NBT_LOADER = MethodType.methodType(void.class, Object.class, Object.class);
 
-    private static final Method ENTITY_GET_HANDLE = ReflectUtil.getMethod(ReflectUtil.getCBClass("entity.CraftEntity").getOrThrow(), "getHandle").getOrThrow();
-    private static final Method ENTITY_SAVE_TO_NBT = ReflectUtil.getMethodByTypeAndParams(ReflectUtil.getNMSClass("Entity", "net.minecraft.world.entity").getOrThrow(), TAG_COMPOUND_CLASS, 0, TAG_COMPOUND_CLASS).getOrThrow();
-    private static final Method ENTITY_LOAD_FROM_NBT = ReflectUtil.getMethodByPredicate(ReflectUtil.getNMSClass("Entity", "net.minecraft.world.entity").getOrThrow(), new ReflectUtil.MethodPredicate()
-            .withParams(TAG_COMPOUND_CLASS).withoutModifiers(Modifier.ABSTRACT).withReturnType(void.class), 0).getOrThrow();
+    private static final MethodHandle AS_NMS_COPY = ReflectUtil.getMethodHandle(ReflectUtil.getMethod(ReflectUtil.getCBClass("inventory.CraftItemStack").getOrThrow(), "asNMSCopy", ItemStack.class).getOrThrow(),
+            MethodType.methodType(Object.class, ItemStack.class)).getOrThrow();
+    private static final MethodHandle GET_ITEM_STACK_TAG;
+    private static final MethodHandle SET_ITEM_STACK_TAG;
+    private static final MethodHandle AS_BUKKIT_COPY = ReflectUtil.getMethodHandle(ReflectUtil.getMethod(ReflectUtil.getCBClass("inventory.CraftItemStack").getOrThrow(), "asBukkitCopy", ReflectUtil.getNMSClass("ItemStack", "net.minecraft.world.item").getOrThrow()).getOrThrow(),
+            MethodType.methodType(ItemStack.class, Object.class)).getOrThrow();
 
-    private static final Class<?> TILE_ENTITY_CLASS = ReflectUtil.getNMSClass("TileEntity", "net.minecraft.world.level.block.entity").getOrThrow();
-    private static final Method GET_TILE_ENTITY;
-    private static final Method TILE_ENTITY_SAVE_TO_NBT = ReflectUtil.getMethodByTypeAndParams(TILE_ENTITY_CLASS, TAG_COMPOUND_CLASS, 0, TAG_COMPOUND_CLASS).getOrThrow();
-    private static final Method TILE_ENTITY_LOAD_FROM_NBT = ReflectUtil.getMethodByTypeAndParams(TILE_ENTITY_CLASS, void.class, 0, TAG_COMPOUND_CLASS).getOrThrow();
+    private static final MethodHandle ENTITY_GET_HANDLE = ReflectUtil.getMethodHandle(ReflectUtil.getMethod(ReflectUtil.getCBClass("entity.CraftEntity").getOrThrow(), "getHandle").getOrThrow(), GETTER).getOrThrow();
+    private static final MethodHandle ENTITY_SAVE_TO_NBT = ReflectUtil.getMethodHandle(ReflectUtil.getMethodByTypeAndParams(ReflectUtil.getNMSClass("Entity", "net.minecraft.world.entity").getOrThrow(), TAG_COMPOUND_CLASS, 0, TAG_COMPOUND_CLASS).getOrThrow(), NBT_SAVER).getOrThrow();
+    private static final MethodHandle ENTITY_LOAD_FROM_NBT = ReflectUtil.getMethodHandle(ReflectUtil.getMethodByPredicate(ReflectUtil.getNMSClass("Entity", "net.minecraft.world.entity").getOrThrow(), new ReflectUtil.MethodPredicate()
+            .withParams(TAG_COMPOUND_CLASS).withoutModifiers(Modifier.ABSTRACT).withReturnType(void.class), 0).getOrThrow(), NBT_LOADER).getOrThrow();
+
+    private static final Class<?> TILE_ENTITY_CLASS = ReflectUtil.getNMSClass("TileEntity", "BlockEntity", "net.minecraft.world.level.block.entity").getOrThrow();
+    private static final MethodHandle GET_TILE_ENTITY;
+    private static final MethodHandle TILE_ENTITY_SAVE_TO_NBT = ReflectUtil.getMethodHandle(ReflectUtil.getMethodByTypeAndParams(TILE_ENTITY_CLASS, TAG_COMPOUND_CLASS, 0, TAG_COMPOUND_CLASS).getOrThrow(), NBT_SAVER).getOrThrow();
+    private static final MethodHandle TILE_ENTITY_LOAD_FROM_NBT = ReflectUtil.getMethodHandle(ReflectUtil.getMethodByTypeAndParams(TILE_ENTITY_CLASS, void.class, 0, TAG_COMPOUND_CLASS).getOrThrow(), NBT_LOADER).getOrThrow();
     private static final Class<?> CRAFT_BLOCK_ENTITY_STATE_CLASS;
 
     static {
+        final var itemStackTag = ReflectUtil.getDeclaredFieldByType(ReflectUtil.getNMSClass("ItemStack", "net.minecraft.world.item").getOrThrow(), TAG_COMPOUND_CLASS, 0, true).getOrThrow();
+        GET_ITEM_STACK_TAG = ReflectUtil.getFieldGetter(itemStackTag, GETTER).getOrThrow();
+        SET_ITEM_STACK_TAG = ReflectUtil.getFieldSetter(itemStackTag, NBT_LOADER).getOrThrow();
+
+        final Method getTileEntity;
         if (ReflectUtil.isVersionHigherOrEqual(1, 12, 1)) {
             CRAFT_BLOCK_ENTITY_STATE_CLASS = ReflectUtil.getCBClass("block.CraftBlockEntityState").getOrThrow();
-            GET_TILE_ENTITY = ReflectUtil.getDeclaredMethodByPredicate(CRAFT_BLOCK_ENTITY_STATE_CLASS, new ReflectUtil.MethodPredicate()
+            getTileEntity = ReflectUtil.getDeclaredMethodByPredicate(CRAFT_BLOCK_ENTITY_STATE_CLASS, new ReflectUtil.MethodPredicate()
                     .withReturnType(TILE_ENTITY_CLASS).withName("getTileEntity"), 0, true).getOrThrow();
         } else {
             CRAFT_BLOCK_ENTITY_STATE_CLASS = null;
-            GET_TILE_ENTITY = ReflectUtil.getMethodByType(ReflectUtil.getCBClass("block.CraftBlockState").getOrThrow(), TILE_ENTITY_CLASS, 0).getOrThrow();
+            getTileEntity = ReflectUtil.getMethodByType(ReflectUtil.getCBClass("block.CraftBlockState").getOrThrow(), TILE_ENTITY_CLASS, 0).getOrThrow();
         }
+        GET_TILE_ENTITY = ReflectUtil.getMethodHandle(getTileEntity, GETTER).getOrThrow();
     }
 
     /**
@@ -71,7 +85,8 @@ public class NBTUtil {
      */
     public static NBTTagCompound readCompressedNBTFromStream(InputStream inputStream) {
         try {
-            return readUncompressedNBTFromStream(new GZIPInputStream(inputStream));
+            // GZIP 流逐字节读取很慢，套一层缓冲
+            return readUncompressedNBTFromStream(new DataInputStream(new BufferedInputStream(new GZIPInputStream(inputStream))));
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -189,7 +204,9 @@ public class NBTUtil {
     public static void writeCompressedNBTToStream(OutputStream outputStream, NBTTagCompound compound) {
         try {
             GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream);
-            writeUncompressedNBTToStream(gzipOutputStream, compound);
+            DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(gzipOutputStream));
+            writeUncompressedNBTToStream(dataOutputStream, compound);
+            dataOutputStream.flush();
             gzipOutputStream.finish();
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -291,12 +308,16 @@ public class NBTUtil {
      * @return an NBTTagCompound containing the NBT data.
      */
     public static NBTTagCompound getItemNBT(ItemStack itemStack) {
-        Object handle = ReflectUtil.invokeMethod(null, AS_NMS_COPY, itemStack).getOrThrow();
-        Object tagCompound = ReflectUtil.getFieldValue(handle, ITEM_STACK_TAG).getOrThrow();
-        if (tagCompound == null) {
-            return new NBTTagCompound();
+        try {
+            Object handle = (Object) AS_NMS_COPY.invokeExact(itemStack);
+            Object tagCompound = (Object) GET_ITEM_STACK_TAG.invokeExact(handle);
+            if (tagCompound == null) {
+                return new NBTTagCompound();
+            }
+            return NBTTagCompound.fromHandle(tagCompound);
+        } catch (Throwable t) {
+            throw ReflectUtil.rethrow(t);
         }
-        return NBTTagCompound.fromHandle(tagCompound);
     }
 
     /**
@@ -315,9 +336,13 @@ public class NBTUtil {
      * @return the modified ItemStack
      */
     public static ItemStack setItemNBT(ItemStack itemStack, NBTTagCompound compound) {
-        Object handle = ReflectUtil.invokeMethod(null, AS_NMS_COPY, itemStack).getOrThrow();
-        ReflectUtil.setFieldValue(handle, ITEM_STACK_TAG, compound.getHandle()).getOrThrow();
-        return (ItemStack) ReflectUtil.invokeMethod(null, AS_BUKKIT_COPY, handle).getOrThrow();
+        try {
+            Object handle = (Object) AS_NMS_COPY.invokeExact(itemStack);
+            SET_ITEM_STACK_TAG.invokeExact(handle, compound.getHandle());
+            return (ItemStack) AS_BUKKIT_COPY.invokeExact(handle);
+        } catch (Throwable t) {
+            throw ReflectUtil.rethrow(t);
+        }
     }
 
     /**
@@ -327,10 +352,14 @@ public class NBTUtil {
      * @return an NBTTagCompound containing the NBT data.
      */
     public static NBTTagCompound getEntityNBT(Entity entity) {
-        Object handle = ReflectUtil.invokeMethod(entity, ENTITY_GET_HANDLE).getOrThrow();
-        Object tagCompound = new NBTTagCompound().getHandle();
-        ReflectUtil.invokeMethod(handle, ENTITY_SAVE_TO_NBT, tagCompound).getOrThrow();
-        return NBTTagCompound.fromHandle(tagCompound);
+        try {
+            Object handle = (Object) ENTITY_GET_HANDLE.invokeExact((Object) entity);
+            Object tagCompound = NBTTagCompound.newHandle();
+            Object ignored = (Object) ENTITY_SAVE_TO_NBT.invokeExact(handle, tagCompound);
+            return NBTTagCompound.fromHandle(tagCompound);
+        } catch (Throwable t) {
+            throw ReflectUtil.rethrow(t);
+        }
     }
 
     /**
@@ -340,9 +369,19 @@ public class NBTUtil {
      * @param compound the compound to set
      */
     public static void setEntityNBT(Entity entity, NBTTagCompound compound) {
-        Object handle = ReflectUtil.invokeMethod(entity, ENTITY_GET_HANDLE).getOrThrow();
-        Object tagCompound = compound.getHandle();
-        ReflectUtil.invokeMethod(handle, ENTITY_LOAD_FROM_NBT, tagCompound).getOrThrow();
+        try {
+            Object handle = (Object) ENTITY_GET_HANDLE.invokeExact((Object) entity);
+            ENTITY_LOAD_FROM_NBT.invokeExact(handle, compound.getHandle());
+        } catch (Throwable t) {
+            throw ReflectUtil.rethrow(t);
+        }
+    }
+
+    private static Object getTileEntity(BlockState blockState) throws Throwable {
+        if (ReflectUtil.isVersionHigherOrEqual(1, 12, 1) && !CRAFT_BLOCK_ENTITY_STATE_CLASS.isAssignableFrom(blockState.getClass())) {
+            return null;
+        }
+        return (Object) GET_TILE_ENTITY.invokeExact((Object) blockState);
     }
 
     /**
@@ -355,18 +394,17 @@ public class NBTUtil {
      * @return an NBTTagCompound containing the NBT data.
      */
     public static NBTTagCompound getTileEntityNBT(BlockState blockState) {
-        Object handle = null;
-        if (!ReflectUtil.isVersionHigherOrEqual(1, 12, 1)) {
-            handle = ReflectUtil.invokeMethod(blockState, GET_TILE_ENTITY).getOrThrow();
-        } else if (CRAFT_BLOCK_ENTITY_STATE_CLASS.isAssignableFrom(blockState.getClass())) {
-            handle = ReflectUtil.invokeMethod(blockState, GET_TILE_ENTITY).getOrThrow();
-        }
-        if (handle == null) {
-            return null;
+        try {
+            Object handle = getTileEntity(blockState);
+            if (handle == null) {
+                return null;
+            }
+            Object tagCompound = NBTTagCompound.newHandle();
+            Object ignored = (Object) TILE_ENTITY_SAVE_TO_NBT.invokeExact(handle, tagCompound);
+            return NBTTagCompound.fromHandle(tagCompound);
+        } catch (Throwable t) {
+            throw ReflectUtil.rethrow(t);
         }
-        Object tagCompound = new NBTTagCompound().getHandle();
-        ReflectUtil.invokeMethod(handle, TILE_ENTITY_SAVE_TO_NBT, tagCompound).getOrThrow();
-        return NBTTagCompound.fromHandle(tagCompound);
     }
 
     /**
@@ -379,21 +417,20 @@ public class NBTUtil {
      * @param compound the compound to set
      */
     public static void setTileEntityNBT(BlockState blockState, NBTTagCompound compound)  {
-        Object handle = null;
-        if (!ReflectUtil.isVersionHigherOrEqual(1, 12, 1)) {
-            handle = ReflectUtil.invokeMethod(blockState, GET_TILE_ENTITY).getOrThrow();
-        } else if (CRAFT_BLOCK_ENTITY_STATE_CLASS.isAssignableFrom(blockState.getClass())) {
-            handle = ReflectUtil.invokeMethod(blockState, GET_TILE_ENTITY).getOrThrow();
-        }
-        if (handle == null) {
-            return;
+        try {
+            Object handle = getTileEntity(blockState);
+            if (handle == null) {
+                return;
+            }
+            TILE_ENTITY_LOAD_FROM_NBT.invokeExact(handle, compound.getHandle());
+        } catch (Throwable t) {
+            throw ReflectUtil.rethrow(t);
         }
-        Object tagCompound = compound.getHandle();
-        ReflectUtil.invokeMethod(handle, TILE_ENTITY_LOAD_FROM_NBT, tagCompound).getOrThrow();
     }
 
 
-    private static final List<String> METHOD_NAMES = Arrays.asList("equals", "hashCode", "toString", "getTypeId");;
+    // getId 和 sizeInBytes 是 Mojang 映射下与值同类型的方法
+    private static final List<String> METHOD_NAMES = Arrays.asList("equals", "hashCode", "toString", "getTypeId", "getId", "sizeInBytes");
     public static Method findValueMethod(Class<?> clazz, Class<?> type) {
         int index = 0;
         while (true) {
@@ -6,6 +6,10 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import org.bukkit.Bukkit;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
 import java.lang.reflect.*;
 import java.util.*;
 import java.util.function.Predicate;
@@ -27,6 +31,8 @@ import java.util.stream.Collectors;
  */
 
 public class ReflectUtil {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
     /**
      * The net.minecraft.server.{version} package for the current version
      */
@@ -100,6 +106,24 @@ public class ReflectUtil {
         return getClass((isVersionHigherOrEqual(1, 17)? packageName: NMS_PACKAGE) + "." + clazz);
     }
 
+    /**
+     * Gets a class in the net.minecraft package, falling back to its Mojang name
+     * on servers which run with Mojang mappings.
+     *
+     * @param clazz the Spigot name of the class
+     * @param mojangName the Mojang name of the class
+     * @param packageName the package of the class since 1.17
+     * @return the class instance
+     */
+    public static ReflectionResponse<Class<?>> getNMSClass(String clazz, String mojangName, String packageName) {
+        ReflectionResponse<Class<?>> response = getNMSClass(clazz, packageName);
+        if (response.hasResult() || !isVersionHigherOrEqual(1, 17)) {
+            return response;
+        }
+        ReflectionResponse<Class<?>> mojang = getClass(packageName + "." + mojangName);
+        return mojang.hasResult() ? mojang : response;
+    }
+
     /**
      * Gets a class in the org.bukkit.craftbukkit.{version} package
      *
@@ -593,6 +617,85 @@ public class ReflectUtil {
         }
     }
 
+    /**
+     * Gets a method handle for a method or constructor, adapted to the specified type.
+     * <p>
+     * Unlike {@link #invokeMethod(Object, Method, Object...)}, a handle stored in a static final
+     * field and called with {@link MethodHandle#invokeExact(Object...)} can be inlined by the JIT,
+     * and neither boxes primitives nor allocates an argument array or a response per call.
+     *
+     * @param executable the method or constructor, instance methods take the receiver as first parameter
+     * @param type the type to adapt the handle to, see {@link MethodHandle#asType(MethodType)}
+     * @return the method handle
+     */
+    public static ReflectionResponse<MethodHandle> getMethodHandle(Executable executable, MethodType type) {
+        assert executable != null: "executable cannot be null";
+        assert type != null: "type cannot be null";
+        try {
+            executable.setAccessible(true);
+            final MethodHandle handle = executable instanceof Method method ? LOOKUP.unreflect(method) : LOOKUP.unreflectConstructor((Constructor<?>) executable);
+            return new ReflectionResponse<>(handle.asType(type));
+        } catch (IllegalAccessException | WrongMethodTypeException | SecurityException e) {
+            return new ReflectionResponse<>(e);
+        }
+    }
+
+    /**
+     * Gets a method handle reading a field, adapted to the specified type.
+     *
+     * @param field the field
+     * @param type the type to adapt the handle to, instance fields take the owner as parameter
+     * @return the method handle
+     */
+    public static ReflectionResponse<MethodHandle> getFieldGetter(Field field, MethodType type) {
+        assert field != null: "field cannot be null";
+        assert type != null: "type cannot be null";
+        try {
+            field.setAccessible(true);
+            return new ReflectionResponse<>(LOOKUP.unreflectGetter(field).asType(type));
+        } catch (IllegalAccessException | WrongMethodTypeException | SecurityException e) {
+            return new ReflectionResponse<>(e);
+        }
+    }
+
+    /**
+     * Gets a method handle writing a field, adapted to the specified type.
+     *
+     * @param field the field
+     * @param type the type to adapt the handle to, instance fields take the owner as first parameter
+     * @return the method handle
+     */
+    public static ReflectionResponse<MethodHandle> getFieldSetter(Field field, MethodType type) {
+        assert field != null: "field cannot be null";
+        assert type != null: "type cannot be null";
+        try {
+            field.setAccessible(true);
+            return new ReflectionResponse<>(LOOKUP.unreflectSetter(field).asType(type));
+        } catch (IllegalAccessException | WrongMethodTypeException | SecurityException e) {
+            return new ReflectionResponse<>(e);
+        }
+    }
+
+    /**
+     * Converts anything thrown by a method handle into an unchecked exception.
+     * <p>
+     * Unchecked exceptions are returned as they are and errors are rethrown, checked
+     * exceptions are wrapped in a ReflectionException. Meant to be used as
+     * {@code throw ReflectUtil.rethrow(t)}.
+     *
+     * @param t the throwable
+     * @return the exception to throw
+     */
+    public static RuntimeException rethrow(Throwable t) {
+        if (t instanceof Error error) {
+            throw error;
+        }
+        if (t instanceof RuntimeException e) {
+            return e;
+        }
+        return new ReflectionException(t);
+    }
+
     /**
      * Gets the printable fields of an object using reflection.
      * The method will attempt to use the toString() on objects
@@ -901,6 +1004,8 @@ public class ReflectUtil {
      * throw exceptions.
      */
     public static class ReflectionException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
         public ReflectionException(String message) {
             super(message);
         }
@@ -2,15 +2,29 @@ package com.hyun.betterspawner.utils.nbt;
 
 import com.hyun.betterspawner.utils.ReflectUtil;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import static com.hyun.betterspawner.utils.NBTUtil.TAG_COMPOUND_CLASS;
 
 public class MojangsonParser {
-    private static final Method PARSE_METHOD = ReflectUtil.getMethodByTypeAndParams(ReflectUtil.getNMSClass("MojangsonParser", "net.minecraft.nbt").getOrThrow(), TAG_COMPOUND_CLASS, 0, String.class).getOrThrow();
+    private static final MethodHandle PARSE_METHOD = ReflectUtil.getMethodHandle(ReflectUtil.getMethodByTypeAndParams(ReflectUtil.getNMSClass("MojangsonParser", "TagParser", "net.minecraft.nbt").getOrThrow(), TAG_COMPOUND_CLASS, 0, String.class).getOrThrow(),
+            MethodType.methodType(Object.class, String.class)).getOrThrow();
+    private static final int CACHE_SIZE = 256;
+
+    // 解析后的 NMS compound，只被包装读取，交给 NMS 的总是 getHandle 返回的副本
+    private static final Map<String, Object> CACHE = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
 
     public static class MojangsonParseException extends Exception {
+        private static final long serialVersionUID = 1L;
+
         public MojangsonParseException(String message) {
             super(message);
         }
@@ -22,11 +36,44 @@ public class MojangsonParser {
      * @return the NBT tag
      */
     public static NBTTagCompound parse(String mojangson) throws MojangsonParseException {
+        return NBTTagCompound.fromHandle(parseHandle(mojangson));
+    }
+
+    /**
+     * Parses a Mojangson string into an NBT tag, reusing the result of earlier calls with the
+     * same string.
+     * <p>
+     * The last parsed strings are cached as NMS compounds and every call returns a lazy wrapper
+     * of the cached compound. Wrappers never modify the compound they view and
+     * {@link NBTTagCompound#getHandle()} returns a copy, so passing an unmodified result to
+     * {@link com.hyun.betterspawner.utils.NBTUtil#setTileEntityNBT} costs one NMS copy and no
+     * conversion.
+     *
+     * @param mojangson the Mojangson string
+     * @return the NBT tag
+     */
+    public static NBTTagCompound parseCached(String mojangson) throws MojangsonParseException {
+        Object handle;
+        synchronized (CACHE) {
+            handle = CACHE.get(mojangson);
+        }
+        if (handle == null) {
+            handle = parseHandle(mojangson);
+            synchronized (CACHE) {
+                CACHE.put(mojangson, handle);
+            }
+        }
+        return NBTTagCompound.fromHandle(handle);
+    }
+
+    private static Object parseHandle(String mojangson) throws MojangsonParseException {
         try {
-            return NBTTagCompound.fromHandle(ReflectUtil.invokeMethod(null, PARSE_METHOD, mojangson).getOrThrow());
-        } catch (ReflectUtil.ReflectionException e) {
-            if(e.getCause() instanceof InvocationTargetException) throw new MojangsonParseException(e.getCause().getCause().getMessage());
+            return (Object) PARSE_METHOD.invokeExact(mojangson);
+        } catch (RuntimeException | Error e) {
             throw e;
+        } catch (Throwable t) {
+            // NMS 抛出的是受检的 CommandSyntaxException
+            throw new MojangsonParseException(t.getMessage());
         }
     }
-}
\ No newline at end of file
+}
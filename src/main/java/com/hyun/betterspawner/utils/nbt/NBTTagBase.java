@@ -1,5 +1,8 @@
 package com.hyun.betterspawner.utils.nbt;
 
+import com.hyun.betterspawner.utils.NBTUtil;
+
+import java.util.function.Function;
 
 /**
  * The abstract base of all the NBT wrappers.
@@ -20,27 +23,53 @@ public abstract class NBTTagBase {
      */
     public abstract int getId();
 
+    /**
+     * Maps an NMS tag class to its wrapper factory.
+     * <p>
+     * Keyed by the classes the wrappers resolve, so a tree conversion costs one identity lookup
+     * per node and does not depend on the NMS class names. Populated lazily, since the wrappers
+     * extend this class and can't be touched from its static initializer.
+     */
+    private static final ClassValue<Function<Object, ? extends NBTTagBase>> FACTORIES = new ClassValue<>() {
+        @Override
+        protected Function<Object, ? extends NBTTagBase> computeValue(Class<?> type) {
+            if (type == NBTUtil.TAG_COMPOUND_CLASS) return NBTTagCompound::fromHandle;
+            if (type == NBTTagList.NMS_CLASS) return NBTTagList::fromHandle;
+            if (type == NBTTagString.NMS_CLASS) return NBTTagString::fromHandle;
+            if (type == NBTTagInt.NMS_CLASS) return NBTTagInt::fromHandle;
+            if (type == NBTTagByte.NMS_CLASS) return NBTTagByte::fromHandle;
+            if (type == NBTTagShort.NMS_CLASS) return NBTTagShort::fromHandle;
+            if (type == NBTTagLong.NMS_CLASS) return NBTTagLong::fromHandle;
+            if (type == NBTTagFloat.NMS_CLASS) return NBTTagFloat::fromHandle;
+            if (type == NBTTagDouble.NMS_CLASS) return NBTTagDouble::fromHandle;
+            if (type == NBTTagByteArray.NMS_CLASS) return NBTTagByteArray::fromHandle;
+            if (type == NBTTagIntArray.NMS_CLASS) return NBTTagIntArray::fromHandle;
+            if (type == NBTTagEnd.NMS_CLASS) return handle -> new NBTTagEnd();
+            return handle -> null;
+        }
+    };
+
     /**
      * Gets the NBT wrapper equivalent to this NMS NBT tag
      *
      * @param handle the NMS NBT tag
-     * @return the NBT Wrapper
+     * @return the NBT Wrapper, or null if the tag type is not supported
      */
     public static NBTTagBase fromHandle(Object handle) {
-        return switch (handle.getClass().getSimpleName()) {
-            case "NBTTagEnd" -> new NBTTagEnd();
-            case "NBTTagByte" -> NBTTagByte.fromHandle(handle);
-            case "NBTTagShort" -> NBTTagShort.fromHandle(handle);
-            case "NBTTagInt" -> NBTTagInt.fromHandle(handle);
-            case "NBTTagLong" -> NBTTagLong.fromHandle(handle);
-            case "NBTTagFloat" -> NBTTagFloat.fromHandle(handle);
-            case "NBTTagDouble" -> NBTTagDouble.fromHandle(handle);
-            case "NBTTagByteArray" -> NBTTagByteArray.fromHandle(handle);
-            case "NBTTagString" -> NBTTagString.fromHandle(handle);
-            case "NBTTagList" -> NBTTagList.fromHandle(handle);
-            case "NBTTagCompound" -> NBTTagCompound.fromHandle(handle);
-            case "NBTTagIntArray" -> NBTTagIntArray.fromHandle(handle);
-            default -> null;
-        };
+        return FACTORIES.get(handle.getClass()).apply(handle);
+    }
+
+    /**
+     * Tells whether this wrapper still holds exactly the data of the NMS tag, so an NMS copy
+     * of that tag can be used instead of building a new one.
+     * <p>
+     * Lazy compounds and lists compare against the handle they view, other tags compare
+     * their value.
+     *
+     * @param handle the NMS NBT tag this wrapper was converted from
+     * @return whether the NMS tag is unchanged
+     */
+    boolean isCopyOf(Object handle) {
+        return this.equals(fromHandle(handle));
     }
 }
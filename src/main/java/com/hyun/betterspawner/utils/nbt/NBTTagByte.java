@@ -3,9 +3,9 @@ package com.hyun.betterspawner.utils.nbt;
 
 import com.hyun.betterspawner.utils.ReflectUtil;
 
-import java.lang.reflect.Constructor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Executable;
-import java.lang.reflect.Method;
 import java.util.Objects;
 
 import static com.hyun.betterspawner.utils.NBTUtil.findValueMethod;
@@ -17,17 +17,20 @@ import static com.hyun.betterspawner.utils.NBTUtil.findValueMethod;
  * with 0 representing false and 1 representing true.
  */
 public class NBTTagByte extends NBTTagBase {
-    private static final Executable TAG_BYTE_CONSTRUCTOR;
-    private static final Method GET_VALUE;
+    private static final MethodHandle TAG_BYTE_CONSTRUCTOR;
+    private static final MethodHandle GET_VALUE;
+
+    static final Class<?> NMS_CLASS = ReflectUtil.getNMSClass("NBTTagByte", "ByteTag", "net.minecraft.nbt").getOrThrow();
 
     static {
-        final var clazz = ReflectUtil.getNMSClass("NBTTagByte", "net.minecraft.nbt").getOrThrow();
+        final Executable constructor;
         if(ReflectUtil.isVersionHigherOrEqual(1, 15)) {
-            TAG_BYTE_CONSTRUCTOR = ReflectUtil.getMethodByTypeAndParams(clazz, clazz, 0, byte.class).getOrThrow();
+            constructor = ReflectUtil.getMethodByTypeAndParams(NMS_CLASS, NMS_CLASS, 0, byte.class).getOrThrow();
         } else {
-            TAG_BYTE_CONSTRUCTOR = ReflectUtil.getConstructor(clazz, byte.class).getOrThrow();
+            constructor = ReflectUtil.getConstructor(NMS_CLASS, byte.class).getOrThrow();
         }
-        GET_VALUE = findValueMethod(clazz, byte.class);
+        TAG_BYTE_CONSTRUCTOR = ReflectUtil.getMethodHandle(constructor, MethodType.methodType(Object.class, byte.class)).getOrThrow();
+        GET_VALUE = ReflectUtil.getMethodHandle(findValueMethod(NMS_CLASS, byte.class), MethodType.methodType(byte.class, Object.class)).getOrThrow();
     }
     /**
      * Gets the NBT wrapper equivalent to this NMS NBT tag
@@ -36,8 +39,11 @@ public class NBTTagByte extends NBTTagBase {
      * @return the NBT Wrapper
      */
     public static NBTTagByte fromHandle(Object handle) {
-        byte b = (byte) ReflectUtil.invokeMethod(handle, GET_VALUE).getOrThrow();
-        return new NBTTagByte(b);
+        try {
+            return new NBTTagByte((byte) GET_VALUE.invokeExact(handle));
+        } catch (Throwable t) {
+            throw ReflectUtil.rethrow(t);
+        }
     }
 
     private byte value;
@@ -76,10 +82,10 @@ public class NBTTagByte extends NBTTagBase {
      */
     @Override
     public Object getHandle() {
-        if(TAG_BYTE_CONSTRUCTOR instanceof Constructor) {
-            return ReflectUtil.invokeConstructor((Constructor<?>) TAG_BYTE_CONSTRUCTOR, value).getOrThrow();
-        } else {
-            return ReflectUtil.invokeMethod(null, (Method) TAG_BYTE_CONSTRUCTOR, value).getOrThrow();
+        try {
+            return (Object) TAG_BYTE_CONSTRUCTOR.invokeExact(value);
+        } catch (Throwable t) {
+            throw ReflectUtil.rethrow(t);
         }
     }
 
@@ -2,8 +2,8 @@ package com.hyun.betterspawner.utils.nbt;
 
 import com.hyun.betterspawner.utils.ReflectUtil;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
 import java.util.Arrays;
 import java.util.Objects;
 
@@ -15,13 +15,14 @@ import static com.hyun.betterspawner.utils.NBTUtil.findValueMethod;
  * Array of bytes with any length from 0 to roughly 2^31
  */
 public class NBTTagByteArray extends NBTTagBase {
-    private static final Constructor<?> TAG_BYTE_ARRAY_CONSTRUCTOR;
-    private static final Method GET_VALUE;
+    private static final MethodHandle TAG_BYTE_ARRAY_CONSTRUCTOR;
+    private static final MethodHandle GET_VALUE;
+
+    static final Class<?> NMS_CLASS = ReflectUtil.getNMSClass("NBTTagByteArray", "ByteArrayTag", "net.minecraft.nbt").getOrThrow();
 
     static {
-        final var clazz = ReflectUtil.getNMSClass("NBTTagByteArray", "net.minecraft.nbt").getOrThrow();
-        TAG_BYTE_ARRAY_CONSTRUCTOR = ReflectUtil.getConstructor(clazz, byte[].class).getOrThrow();
-        GET_VALUE = findValueMethod(clazz, byte[].class);
+        TAG_BYTE_ARRAY_CONSTRUCTOR = ReflectUtil.getMethodHandle(ReflectUtil.getConstructor(NMS_CLASS, byte[].class).getOrThrow(), MethodType.methodType(Object.class, byte[].class)).getOrThrow();
+        GET_VALUE = ReflectUtil.getMethodHandle(findValueMethod(NMS_CLASS, byte[].class), MethodType.methodType(byte[].class, Object.class)).getOrThrow();
     }
     /**
      * Gets the NBT wrapper equivalent to this NMS NBT tag
@@ -30,8 +31,12 @@ public class NBTTagByteArray extends NBTTagBase {
      * @return the NBT Wrapper
      */
     public static NBTTagByteArray fromHandle(Object handle) {
-        byte[] b = (byte[]) ReflectUtil.invokeMethod(handle, GET_VALUE).getOrThrow();
-        return new NBTTagByteArray(b);
+        try {
+            // NMS 返回内部数组，复制后修改不会写回 NMS 标签
+            return new NBTTagByteArray(((byte[]) GET_VALUE.invokeExact(handle)).clone());
+        } catch (Throwable t) {
+            throw ReflectUtil.rethrow(t);
+        }
     }
 
     private byte[] value;
@@ -70,7 +75,11 @@ public class NBTTagByteArray extends NBTTagBase {
      */
     @Override
     public Object getHandle() {
-        return ReflectUtil.invokeConstructor(TAG_BYTE_ARRAY_CONSTRUCTOR, (Object) this.value).getOrThrow();
+        try {
+            return (Object) TAG_BYTE_ARRAY_CONSTRUCTOR.invokeExact(this.value);
+        } catch (Throwable t) {
+            throw ReflectUtil.rethrow(t);
+        }
     }
 
     /**
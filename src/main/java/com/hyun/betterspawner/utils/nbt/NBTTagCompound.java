@@ -2,11 +2,11 @@ package com.hyun.betterspawner.utils.nbt;
 
 
 import com.google.common.collect.Maps;
-import com.hyun.betterspawner.utils.NBTUtil;
 import com.hyun.betterspawner.utils.ReflectUtil;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Modifier;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -19,28 +19,77 @@ import static com.hyun.betterspawner.utils.NBTUtil.TAG_COMPOUND_CLASS;
  * <p>
  * Compounds contain several other tags nested inside them and are
  * usually what the objects using NBT use to store the data.
+ * <p>
+ * Compounds created by {@link #fromHandle(Object)} are lazy views of the NMS compound: children
+ * are only converted when they are accessed, and changes are kept in the wrapper instead of
+ * being written through (copy-on-write), so reading a single nested key costs one path walk
+ * instead of a copy of the whole tree.
  */
 public class NBTTagCompound extends NBTTagBase {
-    private static final Constructor<?> TAG_COMPOUND_CONSTRUCTOR = ReflectUtil.getConstructor(TAG_COMPOUND_CLASS).getOrThrow();
-    private static final Field MAP = ReflectUtil.getDeclaredFieldByType(TAG_COMPOUND_CLASS, Map.class, 0, true).getOrThrow();
+    private static final MethodHandle TAG_COMPOUND_CONSTRUCTOR = ReflectUtil.getMethodHandle(ReflectUtil.getConstructor(TAG_COMPOUND_CLASS).getOrThrow(),
+            MethodType.methodType(Object.class)).getOrThrow();
+    private static final MethodHandle MAP = ReflectUtil.getFieldGetter(ReflectUtil.getDeclaredFieldByType(TAG_COMPOUND_CLASS, Map.class, 0, true).getOrThrow(),
+            MethodType.methodType(Map.class, Object.class)).getOrThrow();
+    private static final MethodHandle COPY = ReflectUtil.getMethodHandle(ReflectUtil.getMethodByPredicate(TAG_COMPOUND_CLASS, new ReflectUtil.MethodPredicate()
+            .withReturnType(TAG_COMPOUND_CLASS).withParams().withoutModifiers(Modifier.STATIC), 0).getOrThrow(),
+            MethodType.methodType(Object.class, Object.class)).getOrThrow();
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> getMap(Object handle) {
+        try {
+            return (Map<String, Object>) MAP.invokeExact(handle);
+        } catch (Throwable t) {
+            throw ReflectUtil.rethrow(t);
+        }
+    }
+
+    /**
+     * Creates an empty NMS compound.
+     *
+     * @return the NMS NBT tag
+     */
+    public static Object newHandle() {
+        try {
+            return (Object) TAG_COMPOUND_CONSTRUCTOR.invokeExact();
+        } catch (Throwable t) {
+            throw ReflectUtil.rethrow(t);
+        }
+    }
+
+    /**
+     * Deep copies an NMS compound using the NMS copy method, which is much cheaper than
+     * converting it to wrappers and back.
+     *
+     * @param handle the NMS NBT tag
+     * @return the copy
+     */
+    public static Object copyHandle(Object handle) {
+        try {
+            return (Object) COPY.invokeExact(handle);
+        } catch (Throwable t) {
+            throw ReflectUtil.rethrow(t);
+        }
+    }
 
     /**
      * Gets the NBT wrapper equivalent to this NMS NBT tag
+     * <p>
+     * The wrapper reads the NMS tag on demand and never modifies it.
      *
      * @param handle the NMS NBT tag
      * @return the NBT Wrapper
      */
     public static NBTTagCompound fromHandle(Object handle) {
         NBTTagCompound tagCompound = new NBTTagCompound();
-        //noinspection unchecked
-        Map<String, ?> map = (Map<String, ?>) ReflectUtil.getFieldValue(handle, MAP).getOrThrow();
-        for (Map.Entry<String, ?> entry : map.entrySet()) {
-            tagCompound.set(entry.getKey(), NBTTagBase.fromHandle(entry.getValue()));
-        }
+        tagCompound.handle = handle;
         return tagCompound;
     }
 
+    // 懒加载时查看的 NMS compound，只读不写
+    private Object handle;
+    // 已转换的子标签和 set 写入的值，优先于 handle 中的同名键；没有 handle 时即全部内容
     private final Map<String, NBTTagBase> values = Maps.newHashMap();
+    private boolean modified;
 
     /**
      * Initializes an empty NBTTagCompound
@@ -66,6 +115,7 @@ public class NBTTagCompound extends NBTTagBase {
      */
     public void set(String key, NBTTagBase value) {
         values.put(key, value);
+        modified = true;
     }
 
     /**
@@ -190,7 +240,17 @@ public class NBTTagCompound extends NBTTagBase {
      * @return the value
      */
     public NBTTagBase get(String key) {
-        return values.get(key);
+        NBTTagBase value = values.get(key);
+        if (value == null && handle != null) {
+            Object child = getMap(handle).get(key);
+            if (child != null) {
+                value = NBTTagBase.fromHandle(child);
+                if (value != null) {
+                    values.put(key, value);
+                }
+            }
+        }
+        return value;
     }
 
     /**
@@ -322,8 +382,8 @@ public class NBTTagCompound extends NBTTagBase {
      * @param key the key
      * @return the List
      */
+    @SuppressWarnings("unchecked")
     public List<NBTTagBase> getList(String key) {
-        //noinspection unchecked
         return ((NBTTagList<NBTTagBase>) this.get(key)).getContents();
     }
 
@@ -346,6 +406,11 @@ public class NBTTagCompound extends NBTTagBase {
      * @return the map
      */
     public Map<String, NBTTagBase> getContents() {
+        if (handle != null) {
+            for (String key : getMap(handle).keySet()) {
+                this.get(key);
+            }
+        }
         return Collections.unmodifiableMap(this.values);
     }
 
@@ -356,7 +421,7 @@ public class NBTTagCompound extends NBTTagBase {
      * @return whether the key exists
      */
     public boolean hasKey(String key) {
-        return this.values.containsKey(key);
+        return this.values.containsKey(key) || handle != null && getMap(handle).containsKey(key);
     }
 
     /**
@@ -367,23 +432,54 @@ public class NBTTagCompound extends NBTTagBase {
      * @return whether the key exists and is of the correct type
      */
     public boolean hasKeyWithType(String key, Class<? extends NBTTagBase> type) {
-        return this.values.containsKey(key) && this.values.get(key).getClass() == type;
+        NBTTagBase value = this.get(key);
+        return value != null && value.getClass() == type;
     }
 
     /**
      * Gets the NMS equivalent to this NBT wrapper.
+     * <p>
+     * If this wrapper was created from an NMS tag, the result is an NMS copy of that tag with
+     * only the changed children replaced, the returned tag never shares anything with it.
      *
      * @return the NMS NBT tag
      */
     @Override
     public Object getHandle() {
-        Object nbtTagCompound = ReflectUtil.invokeConstructor(TAG_COMPOUND_CONSTRUCTOR).getOrThrow();
-        //noinspection unchecked
-        Map<String, Object> handleMap = (Map<String, Object>) ReflectUtil.getFieldValue(nbtTagCompound, MAP).getOrThrow();
+        if (handle == null) {
+            Object nbtTagCompound = newHandle();
+            Map<String, Object> handleMap = getMap(nbtTagCompound);
+            for (Map.Entry<String, NBTTagBase> entry : this.values.entrySet()) {
+                handleMap.put(entry.getKey(), entry.getValue().getHandle());
+            }
+            return nbtTagCompound;
+        }
+        Object copy = copyHandle(handle);
+        Map<String, Object> original = getMap(handle);
+        Map<String, Object> handleMap = getMap(copy);
+        for (Map.Entry<String, NBTTagBase> entry : this.values.entrySet()) {
+            Object child = original.get(entry.getKey());
+            if (child == null || !entry.getValue().isCopyOf(child)) {
+                handleMap.put(entry.getKey(), entry.getValue().getHandle());
+            }
+        }
+        return copy;
+    }
+
+    @Override
+    boolean isCopyOf(Object handle) {
+        if (handle != this.handle || modified) {
+            return false;
+        }
+        // 只需检查已转换过的子标签，其余的从未离开过 NMS
+        Map<String, Object> map = getMap(handle);
         for (Map.Entry<String, NBTTagBase> entry : this.values.entrySet()) {
-            handleMap.put(entry.getKey(), entry.getValue().getHandle());
+            Object child = map.get(entry.getKey());
+            if (child == null || !entry.getValue().isCopyOf(child)) {
+                return false;
+            }
         }
-        return nbtTagCompound;
+        return true;
     }
 
     /**
@@ -398,7 +494,7 @@ public class NBTTagCompound extends NBTTagBase {
 
     @Override
     public String toString() {
-        return "NBTTagCompound{values=" + this.values + "}";
+        return "NBTTagCompound{values=" + this.getContents() + "}";
     }
 
     @Override
@@ -409,11 +505,11 @@ public class NBTTagCompound extends NBTTagBase {
         if (!(obj instanceof NBTTagCompound)) {
             return false;
         }
-        return this.values.equals(((NBTTagCompound) obj).values);
+        return this.getContents().equals(((NBTTagCompound) obj).getContents());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(this.values);
+        return Objects.hash(this.getContents());
     }
 }
@@ -3,9 +3,10 @@ package com.hyun.betterspawner.utils.nbt;
 
 import com.hyun.betterspawner.utils.ReflectUtil;
 
-import java.lang.reflect.Constructor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Executable;
-import java.lang.reflect.Method;
+import java.util.Objects;
 
 import static com.hyun.betterspawner.utils.NBTUtil.findValueMethod;
 
@@ -16,17 +17,20 @@ import static com.hyun.betterspawner.utils.NBTUtil.findValueMethod;
  * common data type to store floating point numbers.
  */
 public class NBTTagDouble extends NBTTagBase {
-    private static final Executable TAG_DOUBLE_CONSTRUCTOR;
-    private static final Method GET_VALUE;
+    private static final MethodHandle TAG_DOUBLE_CONSTRUCTOR;
+    private static final MethodHandle GET_VALUE;
+
+    static final Class<?> NMS_CLASS = ReflectUtil.getNMSClass("NBTTagDouble", "DoubleTag", "net.minecraft.nbt").getOrThrow();
 
     static {
-        final var clazz = ReflectUtil.getNMSClass("NBTTagDouble", "net.minecraft.nbt").getOrThrow();
+        final Executable constructor;
         if(ReflectUtil.isVersionHigherOrEqual(1, 15)) {
-            TAG_DOUBLE_CONSTRUCTOR = ReflectUtil.getMethodByTypeAndParams(clazz, clazz, 0, double.class).getOrThrow();
+            constructor = ReflectUtil.getMethodByTypeAndParams(NMS_CLASS, NMS_CLASS, 0, double.class).getOrThrow();
         } else {
-            TAG_DOUBLE_CONSTRUCTOR = ReflectUtil.getConstructor(clazz, double.class).getOrThrow();
+            constructor = ReflectUtil.getConstructor(NMS_CLASS, double.class).getOrThrow();
         }
-        GET_VALUE = findValueMethod(clazz, double.class);
+        TAG_DOUBLE_CONSTRUCTOR = ReflectUtil.getMethodHandle(constructor, MethodType.methodType(Object.class, double.class)).getOrThrow();
+        GET_VALUE = ReflectUtil.getMethodHandle(findValueMethod(NMS_CLASS, double.class), MethodType.methodType(double.class, Object.class)).getOrThrow();
     }
 
     /**
@@ -36,8 +40,11 @@ public class NBTTagDouble extends NBTTagBase {
      * @return the NBT Wrapper
      */
     public static NBTTagDouble fromHandle(Object handle) {
-        double d = ((double) ReflectUtil.invokeMethod(handle, GET_VALUE).getOrThrow());
-        return new NBTTagDouble(d);
+        try {
+            return new NBTTagDouble((double) GET_VALUE.invokeExact(handle));
+        } catch (Throwable t) {
+            throw ReflectUtil.rethrow(t);
+        }
     }
 
     private double value;
@@ -76,10 +83,10 @@ public class NBTTagDouble extends NBTTagBase {
      */
     @Override
     public Object getHandle() {
-        if(TAG_DOUBLE_CONSTRUCTOR instanceof Constructor) {
-            return ReflectUtil.invokeConstructor((Constructor<?>) TAG_DOUBLE_CONSTRUCTOR, value).getOrThrow();
-        } else {
-            return ReflectUtil.invokeMethod(null, (Method) TAG_DOUBLE_CONSTRUCTOR, value).getOrThrow();
+        try {
+            return (Object) TAG_DOUBLE_CONSTRUCTOR.invokeExact(value);
+        } catch (Throwable t) {
+            throw ReflectUtil.rethrow(t);
         }
     }
 
@@ -108,4 +115,9 @@ public class NBTTagDouble extends NBTTagBase {
         }
         return this.value == ((NBTTagDouble) obj).value;
     }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.value);
+    }
 }
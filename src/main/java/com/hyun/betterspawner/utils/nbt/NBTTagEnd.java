@@ -2,7 +2,8 @@ package com.hyun.betterspawner.utils.nbt;
 
 import com.hyun.betterspawner.utils.ReflectUtil;
 
-import java.lang.reflect.Constructor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
 
 import static com.hyun.betterspawner.utils.NBTUtil.TAG_COMPOUND_CLASS;
 
@@ -13,7 +14,8 @@ import static com.hyun.betterspawner.utils.NBTUtil.TAG_COMPOUND_CLASS;
  * for completeness purposes.
  */
 public class NBTTagEnd extends NBTTagBase {
-    private static final Constructor<?> TAG_END_CONSTRUCTOR = ReflectUtil.getConstructor(TAG_COMPOUND_CLASS).getOrThrow();
+    static final Class<?> NMS_CLASS = ReflectUtil.getNMSClass("NBTTagEnd", "EndTag", "net.minecraft.nbt").getOrThrow();
+    private static final MethodHandle TAG_END_CONSTRUCTOR = ReflectUtil.getMethodHandle(ReflectUtil.getConstructor(TAG_COMPOUND_CLASS).getOrThrow(), MethodType.methodType(Object.class)).getOrThrow();
 
     /**
      * Gets the NMS equivalent to this NBT wrapper.
@@ -22,7 +24,11 @@ public class NBTTagEnd extends NBTTagBase {
      */
     @Override
     public Object getHandle() {
-        return ReflectUtil.invokeConstructor(TAG_END_CONSTRUCTOR).getOrThrow();
+        try {
+            return (Object) TAG_END_CONSTRUCTOR.invokeExact();
+        } catch (Throwable t) {
+            throw ReflectUtil.rethrow(t);
+        }
     }
 
     /**
@@ -2,9 +2,9 @@ package com.hyun.betterspawner.utils.nbt;
 
 import com.hyun.betterspawner.utils.ReflectUtil;
 
-import java.lang.reflect.Constructor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Executable;
-import java.lang.reflect.Method;
 import java.util.Objects;
 
 import static com.hyun.betterspawner.utils.NBTUtil.findValueMethod;
@@ -16,17 +16,20 @@ import static com.hyun.betterspawner.utils.NBTUtil.findValueMethod;
  * the number will not exceed 32 bits. If you aren't, use double instead.
  */
 public class NBTTagFloat extends NBTTagBase {
-    private static final Executable TAG_FLOAT_CONSTRUCTOR;
-    private static final Method GET_VALUE;
+    private static final MethodHandle TAG_FLOAT_CONSTRUCTOR;
+    private static final MethodHandle GET_VALUE;
+
+    static final Class<?> NMS_CLASS = ReflectUtil.getNMSClass("NBTTagFloat", "FloatTag", "net.minecraft.nbt").getOrThrow();
 
     static {
-        final var clazz = ReflectUtil.getNMSClass("NBTTagFloat", "net.minecraft.nbt").getOrThrow();
+        final Executable constructor;
         if(ReflectUtil.isVersionHigherOrEqual(1, 15)) {
-            TAG_FLOAT_CONSTRUCTOR = ReflectUtil.getMethodByTypeAndParams(clazz, clazz, 0, float.class).getOrThrow();
+            constructor = ReflectUtil.getMethodByTypeAndParams(NMS_CLASS, NMS_CLASS, 0, float.class).getOrThrow();
         } else {
-            TAG_FLOAT_CONSTRUCTOR = ReflectUtil.getConstructor(clazz, float.class).getOrThrow();
+            constructor = ReflectUtil.getConstructor(NMS_CLASS, float.class).getOrThrow();
         }
-        GET_VALUE = findValueMethod(clazz, float.class);
+        TAG_FLOAT_CONSTRUCTOR = ReflectUtil.getMethodHandle(constructor, MethodType.methodType(Object.class, float.class)).getOrThrow();
+        GET_VALUE = ReflectUtil.getMethodHandle(findValueMethod(NMS_CLASS, float.class), MethodType.methodType(float.class, Object.class)).getOrThrow();
     }
 
     /**
@@ -36,8 +39,11 @@ public class NBTTagFloat extends NBTTagBase {
      * @return the NBT Wrapper
      */
     public static NBTTagFloat fromHandle(Object handle) {
-        float f = (float) ReflectUtil.invokeMethod(handle, GET_VALUE).getOrThrow();
-        return new NBTTagFloat(f);
+        try {
+            return new NBTTagFloat((float) GET_VALUE.invokeExact(handle));
+        } catch (Throwable t) {
+            throw ReflectUtil.rethrow(t);
+        }
     }
 
     private float value;
@@ -76,10 +82,10 @@ public class NBTTagFloat extends NBTTagBase {
      */
     @Override
     public Object getHandle() {
-        if(TAG_FLOAT_CONSTRUCTOR instanceof Constructor) {
-            return ReflectUtil.invokeConstructor((Constructor<?>) TAG_FLOAT_CONSTRUCTOR, value).getOrThrow();
-        } else {
-            return ReflectUtil.invokeMethod(null, (Method) TAG_FLOAT_CONSTRUCTOR, value).getOrThrow();
+        try {
+            return (Object) TAG_FLOAT_CONSTRUCTOR.invokeExact(value);
+        } catch (Throwable t) {
+            throw ReflectUtil.rethrow(t);
         }
     }
 
@@ -2,9 +2,9 @@ package com.hyun.betterspawner.utils.nbt;
 
 import com.hyun.betterspawner.utils.ReflectUtil;
 
-import java.lang.reflect.Constructor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Executable;
-import java.lang.reflect.Method;
 import java.util.Objects;
 
 import static com.hyun.betterspawner.utils.NBTUtil.findValueMethod;
@@ -16,17 +16,20 @@ import static com.hyun.betterspawner.utils.NBTUtil.findValueMethod;
  * values.
  */
 public class NBTTagInt extends NBTTagBase {
-    private static final Executable TAG_INT_CONSTRUCTOR;
-    private static final Method GET_VALUE;
+    private static final MethodHandle TAG_INT_CONSTRUCTOR;
+    private static final MethodHandle GET_VALUE;
+
+    static final Class<?> NMS_CLASS = ReflectUtil.getNMSClass("NBTTagInt", "IntTag", "net.minecraft.nbt").getOrThrow();
 
     static {
-        final var clazz = ReflectUtil.getNMSClass("NBTTagInt", "net.minecraft.nbt").getOrThrow();
+        final Executable constructor;
         if(ReflectUtil.isVersionHigherOrEqual(1, 15)) {
-            TAG_INT_CONSTRUCTOR = ReflectUtil.getMethodByTypeAndParams(clazz, clazz, 0, int.class).getOrThrow();
+            constructor = ReflectUtil.getMethodByTypeAndParams(NMS_CLASS, NMS_CLASS, 0, int.class).getOrThrow();
         } else {
-            TAG_INT_CONSTRUCTOR = ReflectUtil.getConstructor(clazz, int.class).getOrThrow();
+            constructor = ReflectUtil.getConstructor(NMS_CLASS, int.class).getOrThrow();
         }
-        GET_VALUE = findValueMethod(clazz, int.class);
+        TAG_INT_CONSTRUCTOR = ReflectUtil.getMethodHandle(constructor, MethodType.methodType(Object.class, int.class)).getOrThrow();
+        GET_VALUE = ReflectUtil.getMethodHandle(findValueMethod(NMS_CLASS, int.class), MethodType.methodType(int.class, Object.class)).getOrThrow();
     }
 
     /**
@@ -36,8 +39,11 @@ public class NBTTagInt extends NBTTagBase {
      * @return the NBT Wrapper
      */
     public static NBTTagInt fromHandle(Object handle) {
-        int i = (int) ReflectUtil.invokeMethod(handle, GET_VALUE).getOrThrow();
-        return new NBTTagInt(i);
+        try {
+            return new NBTTagInt((int) GET_VALUE.invokeExact(handle));
+        } catch (Throwable t) {
+            throw ReflectUtil.rethrow(t);
+        }
     }
 
     private int value;
@@ -76,10 +82,10 @@ public class NBTTagInt extends NBTTagBase {
      */
     @Override
     public Object getHandle() {
-        if(TAG_INT_CONSTRUCTOR instanceof Constructor) {
-            return ReflectUtil.invokeConstructor((Constructor<?>) TAG_INT_CONSTRUCTOR, value).getOrThrow();
-        } else {
-            return ReflectUtil.invokeMethod(null, (Method) TAG_INT_CONSTRUCTOR, value).getOrThrow();
+        try {
+            return (Object) TAG_INT_CONSTRUCTOR.invokeExact(value);
+        } catch (Throwable t) {
+            throw ReflectUtil.rethrow(t);
         }
     }
 
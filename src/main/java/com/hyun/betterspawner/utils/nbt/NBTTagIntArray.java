@@ -2,8 +2,8 @@ package com.hyun.betterspawner.utils.nbt;
 
 import com.hyun.betterspawner.utils.ReflectUtil;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
 import java.util.Arrays;
 import java.util.Objects;
 
@@ -15,13 +15,14 @@ import static com.hyun.betterspawner.utils.NBTUtil.findValueMethod;
  * Array of ints with any length from 0 to roughly 2^31
  */
 public class NBTTagIntArray extends NBTTagBase {
-    private static final Constructor<?> TAG_INT_ARRAY_CONSTRUCTOR;
-    private static final Method GET_VALUE;
+    private static final MethodHandle TAG_INT_ARRAY_CONSTRUCTOR;
+    private static final MethodHandle GET_VALUE;
+
+    static final Class<?> NMS_CLASS = ReflectUtil.getNMSClass("NBTTagIntArray", "IntArrayTag", "net.minecraft.nbt").getOrThrow();
 
     static {
-        final var clazz = ReflectUtil.getNMSClass("NBTTagIntArray", "net.minecraft.nbt").getOrThrow();
-        TAG_INT_ARRAY_CONSTRUCTOR = ReflectUtil.getConstructor(clazz, int[].class).getOrThrow();
-        GET_VALUE = findValueMethod(clazz, int[].class);
+        TAG_INT_ARRAY_CONSTRUCTOR = ReflectUtil.getMethodHandle(ReflectUtil.getConstructor(NMS_CLASS, int[].class).getOrThrow(), MethodType.methodType(Object.class, int[].class)).getOrThrow();
+        GET_VALUE = ReflectUtil.getMethodHandle(findValueMethod(NMS_CLASS, int[].class), MethodType.methodType(int[].class, Object.class)).getOrThrow();
     }
 
     /**
@@ -31,8 +32,12 @@ public class NBTTagIntArray extends NBTTagBase {
      * @return the NBT Wrapper
      */
     public static NBTTagIntArray fromHandle(Object handle) {
-        int[] i = (int[]) ReflectUtil.invokeMethod(handle, GET_VALUE).getOrThrow();
-        return new NBTTagIntArray(i);
+        try {
+            // NMS 返回内部数组，复制后修改不会写回 NMS 标签
+            return new NBTTagIntArray(((int[]) GET_VALUE.invokeExact(handle)).clone());
+        } catch (Throwable t) {
+            throw ReflectUtil.rethrow(t);
+        }
     }
 
     private int[] value;
@@ -71,7 +76,11 @@ public class NBTTagIntArray extends NBTTagBase {
      */
     @Override
     public Object getHandle() {
-        return ReflectUtil.invokeConstructor(TAG_INT_ARRAY_CONSTRUCTOR, (Object) this.value).getOrThrow();
+        try {
+            return (Object) TAG_INT_ARRAY_CONSTRUCTOR.invokeExact(this.value);
+        } catch (Throwable t) {
+            throw ReflectUtil.rethrow(t);
+        }
     }
 
     /**
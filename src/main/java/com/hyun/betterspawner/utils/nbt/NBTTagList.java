@@ -2,33 +2,38 @@ package com.hyun.betterspawner.utils.nbt;
 
 import com.hyun.betterspawner.utils.ReflectUtil;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
 import java.util.*;
 
-import static com.hyun.betterspawner.utils.NBTUtil.findValueMethod;
-
 /**
  * A wrapper for NBTTagList
  * <p>
  * A List containing NBT tags with a maximum length of roughly 2^31
+ * <p>
+ * Lists created by {@link #fromHandle(Object)} are lazy views of the NMS list: elements are
+ * only converted when they are accessed, and the first change copies the list (copy-on-write)
+ * instead of writing through to the NMS tag.
  *
  * @param <T> the type of this list
  */
 public class NBTTagList<T extends NBTTagBase> extends NBTTagBase {
-    private static final Constructor<?> TAG_LIST_CONSTRUCTOR;
-    private static final Field LIST;
-    private static final Method ADD_METHOD;
+    private static final MethodHandle TAG_LIST_CONSTRUCTOR;
+    private static final MethodHandle LIST;
+
+    static final Class<?> NMS_CLASS = ReflectUtil.getNMSClass("NBTTagList", "ListTag", "net.minecraft.nbt").getOrThrow();
 
     static {
-        final var clazz = ReflectUtil.getNMSClass("NBTTagList", "net.minecraft.nbt").getOrThrow();
-        TAG_LIST_CONSTRUCTOR = ReflectUtil.getConstructor(clazz).getOrThrow();
-        LIST = ReflectUtil.getDeclaredFieldByType(clazz, List.class, 0, true).getOrThrow();
+        TAG_LIST_CONSTRUCTOR = ReflectUtil.getMethodHandle(ReflectUtil.getConstructor(NMS_CLASS).getOrThrow(), MethodType.methodType(Object.class)).getOrThrow();
+        LIST = ReflectUtil.getFieldGetter(ReflectUtil.getDeclaredFieldByType(NMS_CLASS, List.class, 0, true).getOrThrow(), MethodType.methodType(List.class, Object.class)).getOrThrow();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> getList(Object handle) {
         try {
-            ADD_METHOD = List.class.getDeclaredMethod("add", Object.class);
-        } catch (NoSuchMethodException e) {
-            throw new RuntimeException(e);
+            return (List<Object>) LIST.invokeExact(handle);
+        } catch (Throwable t) {
+            throw ReflectUtil.rethrow(t);
         }
     }
 
@@ -39,17 +44,23 @@ public class NBTTagList<T extends NBTTagBase> extends NBTTagBase {
      * @return the NBT Wrapper
      */
     public static NBTTagList<NBTTagBase> fromHandle(Object handle) {
-        List<?> list = (List<?>) ReflectUtil.getFieldValue(handle, LIST).getOrThrow();
-        NBTTagList<NBTTagBase> tagList = new NBTTagList<>();
-        for (Object o : list) {
-            tagList.add(NBTTagBase.fromHandle(o));
-        }
-        return tagList;
+        return new NBTTagList<>(handle);
     }
 
+    // 懒加载时查看的 NMS 列表，首次修改时置空
+    private Object handle;
+    // 有 handle 时未转换的元素为 null
     private final List<T> value;
     private int type = -1;
 
+    private NBTTagList(Object handle) {
+        this.handle = handle;
+        this.value = new ArrayList<>(Collections.nCopies(getList(handle).size(), null));
+        if (value.size() > 0) {
+            type = this.get(0).getId();
+        }
+    }
+
     /**
      * Initializes this List tag with the specified value
      *
@@ -73,6 +84,7 @@ public class NBTTagList<T extends NBTTagBase> extends NBTTagBase {
      * @param value the contents
      */
     @SafeVarargs
+    @SuppressWarnings("varargs")
     public NBTTagList(T... value) {
         // Arrays.asList() returns an immutable List, so we make a new, mutable one.
         this.value = new ArrayList<>(Arrays.asList(value));
@@ -93,6 +105,7 @@ public class NBTTagList<T extends NBTTagBase> extends NBTTagBase {
      * @return whether the List was changed (see {@link List#add(Object)})
      */
     public boolean add(T t) {
+        materialize();
         if (t == null) {
             throw new IllegalArgumentException("element to add cannot be null");
         }
@@ -111,6 +124,7 @@ public class NBTTagList<T extends NBTTagBase> extends NBTTagBase {
      * @return whether the List contained this element (see {@link List#remove(Object)})
      */
     public boolean remove(T t) {
+        materialize();
         return value.remove(t);
     }
 
@@ -120,8 +134,14 @@ public class NBTTagList<T extends NBTTagBase> extends NBTTagBase {
      * @param index the index
      * @return the element
      */
+    @SuppressWarnings("unchecked")
     public T get(int index) {
-        return value.get(index);
+        T t = value.get(index);
+        if (t == null && handle != null) {
+            t = (T) NBTTagBase.fromHandle(getList(handle).get(index));
+            value.set(index, t);
+        }
+        return t;
     }
 
     /**
@@ -131,6 +151,7 @@ public class NBTTagList<T extends NBTTagBase> extends NBTTagBase {
      * @return the element previously at the index
      */
     public T set(int index, T t) {
+        materialize();
         if (t == null) {
             throw new IllegalArgumentException("element to add cannot be null");
         }
@@ -155,6 +176,7 @@ public class NBTTagList<T extends NBTTagBase> extends NBTTagBase {
      * Clears the List
      */
     public void clear() {
+        this.handle = null;
         this.value.clear();
     }
 
@@ -165,6 +187,7 @@ public class NBTTagList<T extends NBTTagBase> extends NBTTagBase {
      * @return whether the List was changed (see {@link List#addAll(Collection)})
      */
     public boolean addAll(Collection<? extends T> collection) {
+        materialize();
         if (collection == null) {
             throw new IllegalArgumentException("collection to add cannot be null");
         }
@@ -185,9 +208,22 @@ public class NBTTagList<T extends NBTTagBase> extends NBTTagBase {
      * @return an unmodifiable List with the contents of this List tag
      */
     public List<T> getContents() {
+        if (handle != null) {
+            for (int i = 0; i < value.size(); i++) {
+                this.get(i);
+            }
+        }
         return Collections.unmodifiableList(this.value);
     }
 
+    // 修改前转换全部元素并脱离 NMS 列表，嵌套的 compound 和列表仍是懒加载的
+    private void materialize() {
+        if (handle != null) {
+            this.getContents();
+            handle = null;
+        }
+    }
+
     /**
      * Gets the type of the elements contained in this List
      *
@@ -199,18 +235,48 @@ public class NBTTagList<T extends NBTTagBase> extends NBTTagBase {
 
     /**
      * Gets the NMS equivalent to this NBT wrapper.
+     * <p>
+     * The returned tag never shares anything with the NMS tag this wrapper was created from.
      *
      * @return the NMS NBT tag
      */
     @Override
     public Object getHandle() {
-        Object handle = ReflectUtil.invokeConstructor(TAG_LIST_CONSTRUCTOR).getOrThrow();
-        for (NBTTagBase baseTag : this.value) {
-            ReflectUtil.invokeMethod(handle, ADD_METHOD, baseTag.getHandle()).getOrThrow();
+        Object handle;
+        try {
+            handle = (Object) TAG_LIST_CONSTRUCTOR.invokeExact();
+        } catch (Throwable t) {
+            throw ReflectUtil.rethrow(t);
+        }
+        // 直接写入底层列表，NMS 的 add 会重复检查元素类型
+        List<Object> list = getList(handle);
+        List<Object> original = this.handle == null ? null : getList(this.handle);
+        for (int i = 0; i < this.value.size(); i++) {
+            NBTTagBase baseTag = this.value.get(i);
+            // 未访问过的元素临时转换后复制，不与原 NMS 对象共享
+            list.add((baseTag == null ? NBTTagBase.fromHandle(original.get(i)) : baseTag).getHandle());
         }
         return handle;
     }
 
+    @Override
+    boolean isCopyOf(Object handle) {
+        if (handle != this.handle) {
+            return false;
+        }
+        List<Object> list = getList(handle);
+        if (list.size() != this.value.size()) {
+            return false;
+        }
+        for (int i = 0; i < this.value.size(); i++) {
+            NBTTagBase baseTag = this.value.get(i);
+            if (baseTag != null && !baseTag.isCopyOf(list.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Gets the id of this tag
      *
@@ -223,7 +289,7 @@ public class NBTTagList<T extends NBTTagBase> extends NBTTagBase {
 
     @Override
     public String toString() {
-        return "NBTTagList{value=" + this.value + "}";
+        return "NBTTagList{value=" + this.getContents() + "}";
     }
 
     @Override
@@ -234,11 +300,11 @@ public class NBTTagList<T extends NBTTagBase> extends NBTTagBase {
         if (!(obj instanceof NBTTagList)) {
             return false;
         }
-        return this.value.equals(((NBTTagList) obj).value);
+        return this.getContents().equals(((NBTTagList<?>) obj).getContents());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(this.value);
+        return Objects.hash(this.getContents());
     }
 }
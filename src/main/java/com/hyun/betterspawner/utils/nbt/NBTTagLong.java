@@ -2,9 +2,9 @@ package com.hyun.betterspawner.utils.nbt;
 
 import com.hyun.betterspawner.utils.ReflectUtil;
 
-import java.lang.reflect.Constructor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Executable;
-import java.lang.reflect.Method;
 import java.util.Objects;
 
 import static com.hyun.betterspawner.utils.NBTUtil.findValueMethod;
@@ -15,17 +15,20 @@ import static com.hyun.betterspawner.utils.NBTUtil.findValueMethod;
  * Longs are 64-bit numbers, like in Java, and are most commonly used to store timestamps.
  */
 public class NBTTagLong extends NBTTagBase {
-    private static final Executable TAG_LONG_CONSTRUCTOR;
-    private static final Method GET_VALUE;
+    private static final MethodHandle TAG_LONG_CONSTRUCTOR;
+    private static final MethodHandle GET_VALUE;
+
+    static final Class<?> NMS_CLASS = ReflectUtil.getNMSClass("NBTTagLong", "LongTag", "net.minecraft.nbt").getOrThrow();
 
     static {
-        final var clazz = ReflectUtil.getNMSClass("NBTTagLong", "net.minecraft.nbt").getOrThrow();
+        final Executable constructor;
         if(ReflectUtil.isVersionHigherOrEqual(1, 15)) {
-            TAG_LONG_CONSTRUCTOR = ReflectUtil.getMethodByTypeAndParams(clazz, clazz, 0, long.class).getOrThrow();
+            constructor = ReflectUtil.getMethodByTypeAndParams(NMS_CLASS, NMS_CLASS, 0, long.class).getOrThrow();
         } else {
-            TAG_LONG_CONSTRUCTOR = ReflectUtil.getConstructor(clazz, long.class).getOrThrow();
+            constructor = ReflectUtil.getConstructor(NMS_CLASS, long.class).getOrThrow();
         }
-        GET_VALUE = findValueMethod(clazz, long.class);
+        TAG_LONG_CONSTRUCTOR = ReflectUtil.getMethodHandle(constructor, MethodType.methodType(Object.class, long.class)).getOrThrow();
+        GET_VALUE = ReflectUtil.getMethodHandle(findValueMethod(NMS_CLASS, long.class), MethodType.methodType(long.class, Object.class)).getOrThrow();
     }
 
     /**
@@ -35,8 +38,11 @@ public class NBTTagLong extends NBTTagBase {
      * @return the NBT Wrapper
      */
     public static NBTTagLong fromHandle(Object handle) {
-        long l = (long) ReflectUtil.invokeMethod(handle, GET_VALUE).getOrThrow();
-        return new NBTTagLong(l);
+        try {
+            return new NBTTagLong((long) GET_VALUE.invokeExact(handle));
+        } catch (Throwable t) {
+            throw ReflectUtil.rethrow(t);
+        }
     }
 
     private long value;
@@ -75,10 +81,10 @@ public class NBTTagLong extends NBTTagBase {
      */
     @Override
     public Object getHandle() {
-        if(TAG_LONG_CONSTRUCTOR instanceof Constructor) {
-            return ReflectUtil.invokeConstructor((Constructor<?>) TAG_LONG_CONSTRUCTOR, value).getOrThrow();
-        } else {
-            return ReflectUtil.invokeMethod(null, (Method) TAG_LONG_CONSTRUCTOR, value).getOrThrow();
+        try {
+            return (Object) TAG_LONG_CONSTRUCTOR.invokeExact(value);
+        } catch (Throwable t) {
+            throw ReflectUtil.rethrow(t);
         }
     }
 
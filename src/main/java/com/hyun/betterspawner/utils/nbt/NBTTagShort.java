@@ -2,9 +2,9 @@ package com.hyun.betterspawner.utils.nbt;
 
 import com.hyun.betterspawner.utils.ReflectUtil;
 
-import java.lang.reflect.Constructor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Executable;
-import java.lang.reflect.Method;
 import java.util.Objects;
 
 import static com.hyun.betterspawner.utils.NBTUtil.findValueMethod;
@@ -17,17 +17,20 @@ import static com.hyun.betterspawner.utils.NBTUtil.findValueMethod;
  * long or int instead.
  */
 public class NBTTagShort extends NBTTagBase {
-    private static final Executable TAG_SHORT_CONSTRUCTOR;
-    private static final Method GET_VALUE;
+    private static final MethodHandle TAG_SHORT_CONSTRUCTOR;
+    private static final MethodHandle GET_VALUE;
+
+    static final Class<?> NMS_CLASS = ReflectUtil.getNMSClass("NBTTagShort", "ShortTag", "net.minecraft.nbt").getOrThrow();
 
     static {
-        final var clazz = ReflectUtil.getNMSClass("NBTTagShort", "net.minecraft.nbt").getOrThrow();
+        final Executable constructor;
         if(ReflectUtil.isVersionHigherOrEqual(1, 15)) {
-            TAG_SHORT_CONSTRUCTOR = ReflectUtil.getMethodByTypeAndParams(clazz, clazz, 0, short.class).getOrThrow();
+            constructor = ReflectUtil.getMethodByTypeAndParams(NMS_CLASS, NMS_CLASS, 0, short.class).getOrThrow();
         } else {
-            TAG_SHORT_CONSTRUCTOR = ReflectUtil.getConstructor(clazz, short.class).getOrThrow();
+            constructor = ReflectUtil.getConstructor(NMS_CLASS, short.class).getOrThrow();
         }
-        GET_VALUE = findValueMethod(clazz, short.class);
+        TAG_SHORT_CONSTRUCTOR = ReflectUtil.getMethodHandle(constructor, MethodType.methodType(Object.class, short.class)).getOrThrow();
+        GET_VALUE = ReflectUtil.getMethodHandle(findValueMethod(NMS_CLASS, short.class), MethodType.methodType(short.class, Object.class)).getOrThrow();
     }
 
     /**
@@ -37,8 +40,11 @@ public class NBTTagShort extends NBTTagBase {
      * @return the NBT Wrapper
      */
     public static NBTTagShort fromHandle(Object handle) {
-        short s = (short) ReflectUtil.invokeMethod(handle, GET_VALUE).getOrThrow();
-        return new NBTTagShort(s);
+        try {
+            return new NBTTagShort((short) GET_VALUE.invokeExact(handle));
+        } catch (Throwable t) {
+            throw ReflectUtil.rethrow(t);
+        }
     }
 
     private short value;
@@ -77,10 +83,10 @@ public class NBTTagShort extends NBTTagBase {
      */
     @Override
     public Object getHandle() {
-        if(TAG_SHORT_CONSTRUCTOR instanceof Constructor) {
-            return ReflectUtil.invokeConstructor((Constructor<?>) TAG_SHORT_CONSTRUCTOR, value).getOrThrow();
-        } else {
-            return ReflectUtil.invokeMethod(null, (Method) TAG_SHORT_CONSTRUCTOR, value).getOrThrow();
+        try {
+            return (Object) TAG_SHORT_CONSTRUCTOR.invokeExact(value);
+        } catch (Throwable t) {
+            throw ReflectUtil.rethrow(t);
         }
     }
 
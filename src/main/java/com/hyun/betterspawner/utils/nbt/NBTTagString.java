@@ -2,9 +2,9 @@ package com.hyun.betterspawner.utils.nbt;
 
 import com.hyun.betterspawner.utils.ReflectUtil;
 
-import java.lang.reflect.Constructor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Executable;
-import java.lang.reflect.Method;
 import java.util.Objects;
 
 import static com.hyun.betterspawner.utils.NBTUtil.findValueMethod;
@@ -15,17 +15,20 @@ import static com.hyun.betterspawner.utils.NBTUtil.findValueMethod;
  * A String of UTF-8 characters with any length from 0 to roughly 2^15
  */
 public class NBTTagString extends NBTTagBase {
-    private static final Executable TAG_STRING_CONSTRUCTOR;
-    private static final Method GET_VALUE;
+    private static final MethodHandle TAG_STRING_CONSTRUCTOR;
+    private static final MethodHandle GET_VALUE;
+
+    static final Class<?> NMS_CLASS = ReflectUtil.getNMSClass("NBTTagString", "StringTag", "net.minecraft.nbt").getOrThrow();
 
     static {
-        final var clazz = ReflectUtil.getNMSClass("NBTTagString", "net.minecraft.nbt").getOrThrow();
-        GET_VALUE = findValueMethod(clazz, String.class);
+        GET_VALUE = ReflectUtil.getMethodHandle(findValueMethod(NMS_CLASS, String.class), MethodType.methodType(String.class, Object.class)).getOrThrow();
+        final Executable constructor;
         if(ReflectUtil.isVersionHigherOrEqual(1, 15)) {
-            TAG_STRING_CONSTRUCTOR = ReflectUtil.getMethodByTypeAndParams(clazz, clazz, 0, String.class).getOrThrow();
+            constructor = ReflectUtil.getMethodByTypeAndParams(NMS_CLASS, NMS_CLASS, 0, String.class).getOrThrow();
         } else {
-            TAG_STRING_CONSTRUCTOR = ReflectUtil.getConstructor(ReflectUtil.getNMSClass("NBTTagString", "net.minecraft.nbt").getOrThrow(), String.class).getOrThrow();
+            constructor = ReflectUtil.getConstructor(NMS_CLASS, String.class).getOrThrow();
         }
+        TAG_STRING_CONSTRUCTOR = ReflectUtil.getMethodHandle(constructor, MethodType.methodType(Object.class, String.class)).getOrThrow();
     }
     /**
      * Gets the NBT wrapper equivalent to this NMS NBT tag
@@ -34,8 +37,11 @@ public class NBTTagString extends NBTTagBase {
      * @return the NBT Wrapper
      */
     public static NBTTagString fromHandle(Object handle) {
-        String s = (String) ReflectUtil.invokeMethod(handle, GET_VALUE).getOrThrow();
-        return new NBTTagString(s);
+        try {
+            return new NBTTagString((String) GET_VALUE.invokeExact(handle));
+        } catch (Throwable t) {
+            throw ReflectUtil.rethrow(t);
+        }
     }
 
     private String value;
@@ -74,10 +80,10 @@ public class NBTTagString extends NBTTagBase {
      */
     @Override
     public Object getHandle() {
-        if(TAG_STRING_CONSTRUCTOR instanceof Constructor) {
-            return ReflectUtil.invokeConstructor((Constructor<?>) TAG_STRING_CONSTRUCTOR, value).getOrThrow();
-        } else {
-            return ReflectUtil.invokeMethod(null, (Method) TAG_STRING_CONSTRUCTOR, value).getOrThrow();
+        try {
+            return (Object) TAG_STRING_CONSTRUCTOR.invokeExact(value);
+        } catch (Throwable t) {
+            throw ReflectUtil.rethrow(t);
         }
     }
 
@@ -0,0 +1,129 @@
+package com.hyun.betterspawner.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AtomicFileTest {
+    private static final Logger LOGGER = Logger.getLogger("AtomicFileTest");
+
+    @TempDir
+    File dir;
+
+    @Test
+    void readsWhatWasWritten() throws IOException {
+        final AtomicFile file = new AtomicFile(new File(dir, "data"), 2);
+        assertNull(file.read(AtomicFileTest::text, LOGGER));
+        write(file, "one");
+        assertEquals("one", file.read(AtomicFileTest::text, LOGGER));
+        assertFalse(new File(dir, "data.tmp").exists());
+    }
+
+    @Test
+    void keepsGenerations() throws IOException {
+        final AtomicFile file = new AtomicFile(new File(dir, "data"), 2);
+        write(file, "one");
+        write(file, "two");
+        write(file, "three");
+        write(file, "four");
+        assertEquals("three", text(new File(dir, "data.1")));
+        assertEquals("two", text(new File(dir, "data.2")));
+        assertFalse(new File(dir, "data.3").exists());
+    }
+
+    @Test
+    void fallsBackWhenChecksumFails() throws IOException {
+        final AtomicFile file = new AtomicFile(new File(dir, "data"), 2);
+        write(file, "one");
+        write(file, "two");
+        damage(new File(dir, "data"));
+        assertEquals("one", file.read(AtomicFileTest::text, LOGGER));
+    }
+
+    @Test
+    void fallsBackWhenParsingFails() throws IOException {
+        final AtomicFile file = new AtomicFile(new File(dir, "data"), 2);
+        write(file, "one");
+        write(file, "bad");
+        assertEquals("one", file.read(in -> {
+            final String text = text(in);
+            if(text.equals("bad")) throw new IOException("cannot parse");
+            return text;
+        }, LOGGER));
+    }
+
+    @Test
+    void doesNotFallBackAfterPartialRead() throws IOException {
+        final AtomicFile file = new AtomicFile(new File(dir, "data"), 2);
+        write(file, "one");
+        write(file, "two");
+        assertThrows(AtomicFile.PartialReadException.class, () -> file.read(in -> {
+            throw new AtomicFile.PartialReadException(new IOException("half way"));
+        }, LOGGER));
+    }
+
+    @Test
+    void readsDamagedVersionWhenNothingElseIsLeft() throws IOException {
+        final AtomicFile file = new AtomicFile(new File(dir, "data"), 0);
+        write(file, "one");
+        damage(new File(dir, "data"));
+        assertEquals("onf", file.read(AtomicFileTest::text, LOGGER));
+    }
+
+    @Test
+    void acceptsEditedVersionOnlyIfComplete() throws IOException {
+        final AtomicFile.Reader<String> strict = in -> {
+            final String text = text(in);
+            if(!text.endsWith(".")) throw new IOException("incomplete");
+            return text;
+        };
+        final AtomicFile file = new AtomicFile(new File(dir, "data"), 1, strict);
+        write(file, "one.");
+        write(file, "two.");
+        replaceContent(new File(dir, "data"), "edited.");
+        assertEquals("edited.", file.read(strict, LOGGER));
+
+        // 截断后不再完整，回退到 .1
+        replaceContent(new File(dir, "data"), "edi");
+        assertEquals("one.", file.read(strict, LOGGER));
+    }
+
+    @Test
+    void readsFileWithoutFooter() throws IOException {
+        Files.writeString(new File(dir, "data").toPath(), "legacy");
+        assertEquals("legacy", new AtomicFile(new File(dir, "data"), 1).read(AtomicFileTest::text, LOGGER));
+    }
+
+    private static void write(AtomicFile file, String text) throws IOException {
+        file.write(out -> out.write(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String text(InputStream in) throws IOException {
+        return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    // 读取时去掉校验行
+    private static String text(File file) throws IOException {
+        return new AtomicFile(file, 0).read(AtomicFileTest::text, LOGGER);
+    }
+
+    // 改动内容但保留原来的校验行
+    private static void damage(File file) throws IOException {
+        final byte[] data = Files.readAllBytes(file.toPath());
+        data[2]++;
+        Files.write(file.toPath(), data);
+    }
+
+    private static void replaceContent(File file, String text) throws IOException {
+        final String data = Files.readString(file.toPath(), StandardCharsets.UTF_8);
+        Files.writeString(file.toPath(), text + data.substring(data.indexOf("#checksum")), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,123 @@
+package com.hyun.betterspawner.storage;
+
+import com.hyun.betterspawner.utils.BlockPos;
+import org.bukkit.entity.EntityType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpawnerJournalTest {
+    private static final Logger LOGGER = Logger.getLogger("SpawnerJournalTest");
+    private static final UUID WORLD = new UUID(1, 2);
+    private static final long POS = BlockPos.asLong(-100, -60, 35);
+    private static final long OTHER = BlockPos.asLong(7, 64, -9);
+
+    @TempDir
+    File dir;
+
+    @Test
+    void replaysEveryOperation() throws IOException {
+        final SpawnerJournal journal = new SpawnerJournal(new File(dir, "journal"));
+        final SpawnerRegistry live = new SpawnerRegistry();
+        live.setObserver(journal);
+        live.put(WORLD, POS, new SpawnerRecord(EntityType.PIG, 5, 10, SpawnerRecord.FLAG_DENY_BREAK, "名字", "x".repeat(70_000)));
+        live.put(WORLD, OTHER, new SpawnerRecord(null, 1, 1, 0, null, null));
+        final SpawnerRecord changed = live.get(WORLD, POS);
+        changed.setType(EntityType.COW);
+        changed.setDurability(4);
+        live.changed(changed);
+        live.remove(WORLD, OTHER);
+        journal.append(journal.drain());
+        journal.close();
+
+        final SpawnerRegistry replayed = new SpawnerRegistry();
+        assertEquals(4, journal.replay(replayed, LOGGER));
+        assertEquals(1, replayed.size());
+        assertNull(replayed.get(WORLD, OTHER));
+        final SpawnerRecord record = replayed.get(WORLD, POS);
+        assertEquals(EntityType.COW, record.getType());
+        assertEquals(4, record.getDurability());
+        assertEquals(10, record.getMaxDurability());
+        assertEquals(SpawnerRecord.FLAG_DENY_BREAK, record.getFlags());
+        assertEquals("名字", record.getDisplayName());
+        assertEquals(70_000, record.getNbt().length());
+    }
+
+    @Test
+    void dropsTruncatedTail() throws IOException {
+        final File file = new File(dir, "journal");
+        final byte[] data = twoPuts(file);
+        // 最后一条写到一半时断电
+        for (int cut = 1; cut < 20; cut++) {
+            Files.write(file.toPath(), Arrays.copyOf(data, data.length - cut));
+            final SpawnerRegistry replayed = new SpawnerRegistry();
+            assertEquals(1, new SpawnerJournal(file).replay(replayed, LOGGER));
+            assertNotNull(replayed.get(WORLD, POS));
+            assertNull(replayed.get(WORLD, OTHER));
+        }
+    }
+
+    @Test
+    void dropsCorruptTail() throws IOException {
+        final File file = new File(dir, "journal");
+        final byte[] data = twoPuts(file);
+        data[data.length - 3] ^= 0x40;
+        Files.write(file.toPath(), data);
+
+        final SpawnerRegistry replayed = new SpawnerRegistry();
+        assertEquals(1, new SpawnerJournal(file).replay(replayed, LOGGER));
+        assertNotNull(replayed.get(WORLD, POS));
+        assertNull(replayed.get(WORLD, OTHER));
+    }
+
+    @Test
+    void ignoresGarbageLength() throws IOException {
+        final File file = new File(dir, "journal");
+        final byte[] data = twoPuts(file);
+        final byte[] garbage = Arrays.copyOf(data, data.length + 8);
+        Arrays.fill(garbage, data.length, garbage.length, (byte) 0xFF);
+        Files.write(file.toPath(), garbage);
+
+        assertEquals(2, new SpawnerJournal(file).replay(new SpawnerRegistry(), LOGGER));
+    }
+
+    @Test
+    void replaysRotatedSegmentFirst() throws IOException {
+        final SpawnerJournal journal = new SpawnerJournal(new File(dir, "journal"));
+        final SpawnerRegistry live = new SpawnerRegistry();
+        live.setObserver(journal);
+        live.put(WORLD, POS, new SpawnerRecord(EntityType.PIG, 5, 10, 0, null, null));
+        journal.append(journal.drain());
+        journal.markRotated();
+        journal.rotate();
+        live.remove(WORLD, POS);
+        journal.append(journal.drain());
+        journal.close();
+
+        final SpawnerRegistry replayed = new SpawnerRegistry();
+        assertEquals(2, journal.replay(replayed, LOGGER));
+        assertEquals(0, replayed.size());
+
+        journal.discard();
+        assertFalse(journal.exists());
+    }
+
+    private static byte[] twoPuts(File file) throws IOException {
+        final SpawnerJournal journal = new SpawnerJournal(file);
+        final SpawnerRegistry live = new SpawnerRegistry();
+        live.setObserver(journal);
+        live.put(WORLD, POS, new SpawnerRecord(EntityType.PIG, 5, 10, 0, null, null));
+        live.put(WORLD, OTHER, new SpawnerRecord(EntityType.COW, 3, 3, 0, "b", null));
+        journal.append(journal.drain());
+        journal.close();
+        return Files.readAllBytes(file.toPath());
+    }
+}
@@ -0,0 +1,108 @@
+package com.hyun.betterspawner.storage;
+
+import com.hyun.betterspawner.utils.BlockPos;
+import org.bukkit.entity.EntityType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpawnerMigratorTest {
+    private static final Logger LOGGER = Logger.getLogger("SpawnerMigratorTest");
+    private static final UUID WORLD = new UUID(3, 4);
+
+    @TempDir
+    File dir;
+
+    @Test
+    void copiesAndVerifiesEveryRecord() throws IOException {
+        final List<SpawnerRecord> records = new ArrayList<>();
+        final SpawnerMigrator migrator = new SpawnerMigrator(source(1000, -1), "yaml", SpawnerStorage.open("yaml", new File(dir, "spawnerData.yml"), 0));
+        assertEquals(1000, migrator.run(LOGGER));
+        assertEquals(SpawnerMigrator.Phase.DONE, migrator.getPhase());
+        assertEquals(1000, migrator.getCopied());
+        assertEquals(1000, migrator.getVerified());
+        assertFalse(new File(dir, "spawnerData.yml.migrating").exists());
+
+        migrator.getTarget().read(new SpawnerSource.Sink() {
+            @Override
+            public void accept(UUID world, long pos, SpawnerRecord record) {
+                records.add(record);
+            }
+
+            @Override
+            public void acceptUnresolved(String name, org.bukkit.configuration.ConfigurationSection section) {
+                fail("unexpected legacy world " + name);
+            }
+        }, LOGGER);
+        assertEquals(1000, records.size());
+    }
+
+    @Test
+    void leavesTargetUntouchedOnFailure() throws IOException {
+        final File target = new File(dir, "spawnerData.yml");
+        Files.writeString(target.toPath(), "old");
+        final SpawnerMigrator migrator = new SpawnerMigrator(source(1000, 500), "yaml", SpawnerStorage.open("yaml", target, 0));
+        assertThrows(IOException.class, () -> migrator.run(LOGGER));
+        assertEquals(SpawnerMigrator.Phase.FAILED, migrator.getPhase());
+        assertNotNull(migrator.getError());
+        assertEquals("old", Files.readString(target.toPath()));
+        assertFalse(new File(dir, "spawnerData.yml.migrating").exists());
+    }
+
+    @Test
+    void checksumCoversEveryField() {
+        final RecordChecksum crc = new RecordChecksum();
+        final long pos = BlockPos.asLong(1, 2, 3);
+        final long base = crc.of(WORLD, pos, new SpawnerRecord(EntityType.PIG, 5, 10, 0, null, null));
+        assertEquals(base, crc.of(WORLD, pos, new SpawnerRecord(EntityType.PIG, 5, 10, 0, null, null)));
+        assertNotEquals(base, crc.of(new UUID(3, 5), pos, new SpawnerRecord(EntityType.PIG, 5, 10, 0, null, null)));
+        assertNotEquals(base, crc.of(WORLD, BlockPos.asLong(1, 2, 4), new SpawnerRecord(EntityType.PIG, 5, 10, 0, null, null)));
+        assertNotEquals(base, crc.of(WORLD, pos, new SpawnerRecord(EntityType.COW, 5, 10, 0, null, null)));
+        assertNotEquals(base, crc.of(WORLD, pos, new SpawnerRecord(EntityType.PIG, 4, 10, 0, null, null)));
+        assertNotEquals(base, crc.of(WORLD, pos, new SpawnerRecord(EntityType.PIG, 5, 11, 0, null, null)));
+        assertNotEquals(base, crc.of(WORLD, pos, new SpawnerRecord(EntityType.PIG, 5, 10, 1, null, null)));
+        assertNotEquals(base, crc.of(WORLD, pos, new SpawnerRecord(EntityType.PIG, 5, 10, 0, "", null)));
+        assertNotEquals(base, crc.of(WORLD, pos, new SpawnerRecord(EntityType.PIG, 5, 10, 0, null, "")));
+    }
+
+    @Test
+    void movesGenerationsAside() throws IOException {
+        for (String name : new String[]{"spawnerData.db", "spawnerData.db.1", "spawnerData.db-wal", "spawnerData.dbx"}) {
+            Files.writeString(new File(dir, name).toPath(), name);
+        }
+        SpawnerMigrator.moveAside(new File(dir, "spawnerData.db"), ".migrated");
+        assertEquals("spawnerData.db", Files.readString(new File(dir, "spawnerData.db.migrated").toPath()));
+        assertEquals("spawnerData.db.1", Files.readString(new File(dir, "spawnerData.db.migrated.1").toPath()));
+        assertEquals("spawnerData.db-wal", Files.readString(new File(dir, "spawnerData.db.migrated-wal").toPath()));
+        assertFalse(new File(dir, "spawnerData.db").exists());
+        assertTrue(new File(dir, "spawnerData.dbx").exists());
+    }
+
+    // 在 failAt 处抛出异常，-1 表示不失败
+    private static SpawnerSource source(int count, int failAt) {
+        return new SpawnerSource() {
+            @Override
+            public File getFile() {
+                return new File("memory");
+            }
+
+            @Override
+            public void read(Sink sink, Logger logger) throws IOException {
+                for (int i = 0; i < count; i++) {
+                    if(i == failAt) throw new IOException("source failed");
+                    final SpawnerRecord record = new SpawnerRecord(i % 2 == 0 ? EntityType.PIG : null, i, i + 1, i % 4, i % 3 == 0 ? "name " + i : null, null);
+                    sink.accept(WORLD, BlockPos.asLong(i - 500, -64 + i % 300, -i), record);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,47 @@
+package com.hyun.betterspawner.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlockPosTest {
+
+    @Test
+    void roundTripsNegativeCoordinates() {
+        final int[][] positions = {
+                {0, 0, 0}, {-1, -1, -1}, {-30_000_000, -64, 29_999_999}, {12, 319, -7},
+                {-33_554_432, -2048, -33_554_432}, {33_554_431, 2047, 33_554_431}
+        };
+        for (int[] p : positions) {
+            final long packed = BlockPos.asLong(p[0], p[1], p[2]);
+            assertEquals(p[0], BlockPos.getX(packed));
+            assertEquals(p[1], BlockPos.getY(packed));
+            assertEquals(p[2], BlockPos.getZ(packed));
+        }
+    }
+
+    @Test
+    void matchesVanillaLayout() {
+        // x 26 位、z 26 位、y 12 位，与原版 BlockPos.asLong 相同
+        assertEquals(-1L, BlockPos.asLong(-1, -1, -1));
+        assertEquals(1L, BlockPos.asLong(0, 1, 0));
+        assertEquals(1L << 12, BlockPos.asLong(0, 0, 1));
+        assertEquals(1L << 38, BlockPos.asLong(1, 0, 0));
+    }
+
+    @Test
+    void findsChunkOfNegativePositions() {
+        assertEquals(BlockPos.chunkKey(-1, -1), BlockPos.chunkKeyOf(BlockPos.asLong(-1, 0, -16)));
+        assertEquals(BlockPos.chunkKey(-2, 0), BlockPos.chunkKeyOf(BlockPos.asLong(-17, 0, 15)));
+        assertNotEquals(BlockPos.chunkKey(0, -1), BlockPos.chunkKey(-1, 0));
+    }
+
+    @Test
+    void parsesItsOwnFormat() {
+        final long packed = BlockPos.asLong(-5, -60, 123);
+        assertEquals("-5,-60,123", BlockPos.toString(packed));
+        assertEquals(packed, BlockPos.fromString("-5, -60, 123"));
+        assertThrows(IllegalArgumentException.class, () -> BlockPos.fromString("1,2"));
+        assertThrows(IllegalArgumentException.class, () -> BlockPos.fromString("a,b,c"));
+    }
+}
@@ -0,0 +1,56 @@
+package com.hyun.betterspawner.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongObjectMapTest {
+
+    @Test
+    void putsAndReplaces() {
+        final LongObjectMap<String> map = new LongObjectMap<>();
+        assertNull(map.put(0L, "zero"));
+        assertNull(map.put(-1L, "minus one"));
+        assertEquals("zero", map.put(0L, "nil"));
+        assertEquals(2, map.size());
+        assertEquals("nil", map.get(0L));
+        assertEquals("minus one", map.get(-1L));
+        assertNull(map.get(1L));
+        assertFalse(map.containsKey(1L));
+    }
+
+    @Test
+    void keepsProbeChainsAfterRemoval() {
+        // 随机增删并与 HashMap 对照，覆盖扩容和删除时的挪位
+        final LongObjectMap<Long> map = new LongObjectMap<>(4);
+        final Map<Long, Long> expected = new HashMap<>();
+        final Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            final long key = BlockPos.asLong(random.nextInt(64) - 32, random.nextInt(16) - 8, random.nextInt(64) - 32);
+            if(random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        expected.forEach((key, value) -> assertEquals(value, map.get(key)));
+
+        final Map<Long, Long> visited = new HashMap<>();
+        map.forEach((key, value) -> assertNull(visited.put(key, value)));
+        assertEquals(expected, visited);
+    }
+
+    @Test
+    void clears() {
+        final LongObjectMap<String> map = new LongObjectMap<>();
+        for (long i = 0; i < 100; i++) map.put(i, "v");
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(5L));
+    }
+}